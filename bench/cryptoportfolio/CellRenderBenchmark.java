@@ -0,0 +1,162 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of painting one table cell: the renderer lookup, configuring the
+ * component and painting it, as JTable does for every visible cell while
+ * scrolling. Run with {@code ant bench -Dbench.args="CellRender -prof gc"};
+ * {@code gc.alloc.rate.norm} is the number of bytes allocated per cell.
+ * {@link #prepareVisibleCells} covers what the renderers do themselves,
+ * and {@link #paintEmptyCells} is the floor that painting any component costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CellRenderBenchmark {
+
+    private static final int HOLDINGS = 1000;
+    private static final int VISIBLE_ROWS = 20;
+    private static final int CELLS = VISIBLE_ROWS * 6;
+
+    @Param({"lightweight", "classic"})
+    String rendering;
+
+    private JTable table;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private int firstRow;
+    private JComponent baseline;
+    private LogHoldingStore store;
+
+    @Setup
+    public void setUp() throws IOException {
+        // One catalog entry per holding, so every row is a known coin
+        File catalog = File.createTempFile("assets", ".csv");
+        catalog.deleteOnExit();
+        List<CryptoHolding> holdings = new ArrayList<>();
+        try (PrintWriter out = new PrintWriter(catalog, "UTF-8")) {
+            out.println("id,symbol,name,icon");
+            for (int i = 0; i < HOLDINGS; i++) {
+                out.println("coin-" + i + ",C" + i + ",Coin " + i + ",");
+                holdings.add(new CryptoHolding("coin-" + i, 1 + i * 0.37));
+            }
+        }
+        AssetRegistry registry = new AssetRegistry(catalog);
+        registry.reload();
+        PriceCache prices = new PriceCache(60000);
+        PriceCache.Batch batch = prices.newBatch();
+        for (CryptoHolding holding : holdings) {
+            LocalPriceProvider.syntheticPrice(holding.coinId, 1, batch);
+        }
+        batch.commit();
+
+        File portfolio = File.createTempFile("holdings", ".bin");
+        portfolio.delete();
+        portfolio.deleteOnExit();
+        store = new LogHoldingStore(portfolio, registry);
+        store.load();
+        for (CryptoHolding holding : holdings) {
+            store.add(holding);
+        }
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+        model.refresh();
+        table = new JTable(model);
+        table.setRowHeight(50);
+        table.setSize(1100, HOLDINGS * 50);
+        ImageIcon icon = new ImageIcon(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB));
+        CryptoTableCellRenderer renderer = new CryptoTableCellRenderer(asset -> icon, rendering.equals("lightweight"));
+        table.setDefaultRenderer(Object.class, renderer);
+        table.setDefaultRenderer(Asset.class, renderer);
+        table.setDefaultRenderer(Double.class, renderer);
+        table.getColumnModel().getColumn(HoldingsTableModel.COL_ACTIONS)
+                .setCellRenderer(rendering.equals("lightweight") ? new ActionsCell() : new ButtonRenderer());
+
+        baseline = new JComponent() {
+        };
+        image = new BufferedImage(200, 50, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+        store.close();
+    }
+
+    /** Renderer lookup and configuration only, for one screenful of cells. */
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public Component prepareVisibleCells() {
+        firstRow = (firstRow + 1) % (table.getRowCount() - VISIBLE_ROWS);
+        Component cell = null;
+        for (int row = firstRow; row < firstRow + VISIBLE_ROWS; row++) {
+            for (int column = 0; column < 6; column++) {
+                cell = table.prepareRenderer(table.getCellRenderer(row, column), row, column);
+            }
+        }
+        return cell;
+    }
+
+    /** One screenful of cells, scrolling by a row each time. */
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void paintVisibleCells() {
+        firstRow = (firstRow + 1) % (table.getRowCount() - VISIBLE_ROWS);
+        for (int row = firstRow; row < firstRow + VISIBLE_ROWS; row++) {
+            for (int column = 0; column < 6; column++) {
+                TableCellRenderer renderer = table.getCellRenderer(row, column);
+                Component cell = table.prepareRenderer(renderer, row, column);
+                cell.setBounds(0, 0, 180, 50);
+                cell.paint(graphics);
+            }
+        }
+    }
+
+    /**
+     * Control: paints an empty component per cell. What this allocates is
+     * Swing's own per-cell cost (JComponent.paint copies the Graphics), which
+     * no renderer can avoid; the renderers' share is the difference.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void paintEmptyCells() {
+        for (int i = 0; i < CELLS; i++) {
+            baseline.setBounds(0, 0, 180, 50);
+            baseline.paint(graphics);
+        }
+    }
+}
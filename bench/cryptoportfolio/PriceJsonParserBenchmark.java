@@ -0,0 +1,86 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Streaming price parser against the org.json path it replaced: read the
+ * body line by line into a StringBuilder, build a JSONObject and look every
+ * coin up in it. Run with {@code ant bench -Dbench.args="PriceJsonParser -prof gc"}
+ * to see the allocation rate as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceJsonParserBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int coins;
+
+    private String body;
+    private String[] ids;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        ids = new String[coins];
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < coins; i++) {
+            ids[i] = "coin-" + i;
+            json.append(i == 0 ? "" : ",").append('"').append(ids[i]).append("\":{\"usd\":")
+                    .append(random.nextInt(100_000)).append('.').append(random.nextInt(100))
+                    .append(",\"usd_24h_change\":").append(random.nextDouble() * 20 - 10).append('}');
+        }
+        body = json.append('}').toString();
+    }
+
+    @Benchmark
+    public void streaming(Blackhole hole) throws IOException {
+        PriceJsonParser.parse(new StringReader(body), (id, price, change) -> {
+            hole.consume(price);
+            hole.consume(change);
+        });
+    }
+
+    @Benchmark
+    public void orgJson(Blackhole hole) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(body));
+        StringBuilder response = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            response.append(line);
+        }
+        JSONObject json = new JSONObject(response.toString());
+        for (String id : ids) {
+            if (json.has(id)) {
+                JSONObject coin = json.getJSONObject(id);
+                hole.consume(coin.getDouble("usd"));
+                hole.consume(coin.optDouble("usd_24h_change", 0.0));
+            }
+        }
+    }
+}
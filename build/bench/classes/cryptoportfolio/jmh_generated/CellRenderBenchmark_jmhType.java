@@ -0,0 +1,4 @@
+package cryptoportfolio.jmh_generated;
+public class CellRenderBenchmark_jmhType extends CellRenderBenchmark_jmhType_B3 {
+}
+
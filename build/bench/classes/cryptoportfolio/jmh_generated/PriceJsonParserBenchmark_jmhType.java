@@ -0,0 +1,4 @@
+package cryptoportfolio.jmh_generated;
+public class PriceJsonParserBenchmark_jmhType extends PriceJsonParserBenchmark_jmhType_B3 {
+}
+
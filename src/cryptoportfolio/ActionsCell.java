@@ -0,0 +1,169 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * Lightweight renderer for the Actions column: the Edit and Remove buttons
+ * are painted as two filled boxes with their labels, and clicks are
+ * hit-tested against the same boxes instead of going through a cell editor.
+ * Nothing is created per row, so painting costs the same at any table size.
+ */
+class ActionsCell extends JComponent implements TableCellRenderer {
+
+    static final int NONE = 0;
+    static final int EDIT = 1;
+    static final int REMOVE = 2;
+
+    private static final String EDIT_TEXT = "Edit";
+    private static final String REMOVE_TEXT = "Remove";
+    private static final int PADDING = 10; // Left and right of each label
+    private static final int GAP = 5; // Between the two boxes
+
+    private Color background = Theme.BACKGROUND;
+
+    ActionsCell() {
+        setFont(Theme.BUTTON_FONT);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value,
+            boolean isSelected, boolean hasFocus, int row, int column) {
+        background = isSelected ? Theme.SELECTION : Theme.BACKGROUND;
+        return this;
+    }
+
+    /**
+     * Routes clicks on the painted boxes of the given column to the
+     * listener and shows a hand cursor over them.
+     */
+    void install(JTable table, int modelColumn, ButtonEditor.ActionListener listener) {
+        MouseAdapter handler = new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    return;
+                }
+                int row = table.rowAtPoint(e.getPoint());
+                int action = actionAt(table, modelColumn, e.getPoint());
+                if (action == EDIT) {
+                    listener.editCrypto(row);
+                } else if (action == REMOVE) {
+                    listener.removeCrypto(row);
+                }
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                boolean over = actionAt(table, modelColumn, e.getPoint()) != NONE;
+                Cursor cursor = over ? Cursor.getPredefinedCursor(Cursor.HAND_CURSOR) : null;
+                if (table.isCursorSet() == over) {
+                    return;
+                }
+                table.setCursor(cursor);
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                table.setCursor(null);
+            }
+        };
+        table.addMouseListener(handler);
+        table.addMouseMotionListener(handler);
+    }
+
+    /** Which box, if any, is under a point in table coordinates. */
+    private int actionAt(JTable table, int modelColumn, Point point) {
+        int row = table.rowAtPoint(point);
+        int column = table.columnAtPoint(point);
+        if (row < 0 || column < 0 || table.convertColumnIndexToModel(column) != modelColumn) {
+            return NONE;
+        }
+        Rectangle cell = table.getCellRect(row, column, false);
+        return actionAt(table.getFontMetrics(Theme.BUTTON_FONT), cell.width, cell.height,
+                point.x - cell.x, point.y - cell.y);
+    }
+
+    /** Which box, if any, is under a point in cell coordinates. */
+    static int actionAt(FontMetrics metrics, int width, int height, int x, int y) {
+        int boxHeight = boxHeight(metrics);
+        int top = (height - boxHeight) / 2;
+        if (y < top || y >= top + boxHeight) {
+            return NONE;
+        }
+        int editWidth = metrics.stringWidth(EDIT_TEXT) + 2 * PADDING;
+        int removeWidth = metrics.stringWidth(REMOVE_TEXT) + 2 * PADDING;
+        int left = (width - editWidth - GAP - removeWidth) / 2;
+        if (x >= left && x < left + editWidth) {
+            return EDIT;
+        }
+        int removeLeft = left + editWidth + GAP;
+        if (x >= removeLeft && x < removeLeft + removeWidth) {
+            return REMOVE;
+        }
+        return NONE;
+    }
+
+    private static int boxHeight(FontMetrics metrics) {
+        return metrics.getHeight() + 10;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(background);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        FontMetrics metrics = g.getFontMetrics(Theme.BUTTON_FONT);
+        int boxHeight = boxHeight(metrics);
+        int top = (getHeight() - boxHeight) / 2;
+        int baseline = top + (boxHeight - metrics.getHeight()) / 2 + metrics.getAscent();
+        int editWidth = metrics.stringWidth(EDIT_TEXT) + 2 * PADDING;
+        int removeWidth = metrics.stringWidth(REMOVE_TEXT) + 2 * PADDING;
+        int left = (getWidth() - editWidth - GAP - removeWidth) / 2;
+
+        g.setFont(Theme.BUTTON_FONT);
+        paintBox(g, EDIT_TEXT, Theme.ACCENT, left, top, editWidth, boxHeight, baseline);
+        paintBox(g, REMOVE_TEXT, Theme.DANGER, left + editWidth + GAP, top, removeWidth, boxHeight, baseline);
+    }
+
+    private static void paintBox(Graphics g, String text, Color color, int x, int y, int width, int height,
+            int baseline) {
+        g.setColor(color);
+        g.fillRect(x, y, width, height);
+        g.setColor(Theme.TEXT);
+        g.drawString(text, x + PADDING, baseline);
+    }
+
+    // Renderer components are only stamped, so skip the usual bookkeeping
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+}
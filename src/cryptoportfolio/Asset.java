@@ -0,0 +1,31 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+/**
+ * A tradable coin: its CoinGecko id, ticker symbol, display name and icon.
+ * Instances are owned by {@link AssetRegistry} and compared by identity.
+ */
+final class Asset {
+    final String id;
+    final String symbol;
+    final String name;
+    final String displayName;
+    final String iconFile;
+
+    Asset(String id, String symbol, String name, String iconFile) {
+        this.id = id.intern();
+        this.symbol = symbol.intern();
+        this.name = name;
+        this.displayName = (name + " (" + symbol + ")").intern();
+        this.iconFile = iconFile;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
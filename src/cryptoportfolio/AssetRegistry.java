@@ -0,0 +1,293 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bidirectional index of known assets, loaded from a catalog file.
+ *
+ * Lookups by id, symbol or display name are hash lookups. Type-ahead search
+ * runs against sorted lowercase keys, so a prefix query is a binary search
+ * even with tens of thousands of entries.
+ *
+ * The catalog is a CSV file with the header {@code id,symbol,name,icon}. It
+ * is read from {@code assets.csv} in the working directory, or from the file
+ * named by the {@code cryptoportfolio.catalog} property, falling back to the
+ * bundled {@code /resources/assets.csv}. A file-based catalog can be reloaded
+ * at runtime; readers always see either the old or the new index, never a
+ * mix.
+ */
+class AssetRegistry {
+
+    static final String CATALOG_PROPERTY = "cryptoportfolio.catalog";
+    static final String CATALOG_FILE_NAME = "assets.csv";
+    private static final String CATALOG_RESOURCE = "/resources/" + CATALOG_FILE_NAME;
+
+    private final File catalogFile;
+    private long catalogModified;
+    private volatile Index index = new Index(Collections.<Asset>emptyList());
+
+    AssetRegistry(File catalogFile) {
+        this.catalogFile = catalogFile;
+    }
+
+    /** Loads the catalog from the configured file or the bundled resource. */
+    static AssetRegistry fromSystemProperties() {
+        String configured = System.getProperty(CATALOG_PROPERTY);
+        File file = new File(configured != null ? configured : CATALOG_FILE_NAME);
+        AssetRegistry registry = new AssetRegistry(file.exists() ? file : null);
+        try {
+            registry.reload();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return registry;
+    }
+
+    /**
+     * Re-reads the catalog file if it changed since the last load.
+     *
+     * @return true if a new index was published
+     */
+    synchronized boolean reloadIfChanged() throws IOException {
+        if (catalogFile == null || catalogFile.lastModified() == catalogModified) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    synchronized void reload() throws IOException {
+        List<Asset> assets;
+        if (catalogFile != null) {
+            catalogModified = catalogFile.lastModified();
+            try (Reader reader = Files.newBufferedReader(catalogFile.toPath(), StandardCharsets.UTF_8)) {
+                assets = readCatalog(reader);
+            }
+        } else {
+            InputStream stream = AssetRegistry.class.getResourceAsStream(CATALOG_RESOURCE);
+            if (stream == null) {
+                throw new IOException("Missing bundled catalog " + CATALOG_RESOURCE);
+            }
+            try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                assets = readCatalog(reader);
+            }
+        }
+        index = new Index(assets);
+    }
+
+    private List<Asset> readCatalog(Reader source) throws IOException {
+        Index current = index;
+        List<Asset> assets = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        BufferedReader reader = new BufferedReader(source);
+        String line = reader.readLine(); // Header
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = splitCsvLine(line);
+            if (fields.length < 3 || fields[0].isEmpty() || fields[1].isEmpty() || !seen.add(fields[0])) {
+                System.err.println("Skipping catalog line " + lineNumber + ": " + line);
+                continue;
+            }
+            String id = fields[0];
+            String icon = fields.length > 3 && !fields[3].isEmpty() ? fields[3] : null;
+
+            // Unchanged entries keep their Asset instance
+            Asset previous = current.byId.get(id);
+            if (previous != null && previous.symbol.equals(fields[1])
+                    && previous.name.equals(fields[2]) && Objects.equals(previous.iconFile, icon)) {
+                assets.add(previous);
+                continue;
+            }
+            assets.add(new Asset(id, fields[1], fields[2], icon));
+        }
+        return assets;
+    }
+
+    /** Splits one CSV line, honouring double-quoted fields. */
+    static String[] splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    /** Returns the asset with the given CoinGecko id, or null. */
+    Asset get(String id) {
+        return id == null ? null : index.byId.get(id);
+    }
+
+    /**
+     * Finds an asset by id, display name such as {@code "Bitcoin (BTC)"} or
+     * ticker symbol, in that order. Used to migrate stored holdings that
+     * were keyed by display name.
+     */
+    Asset resolve(String key) {
+        if (key == null) {
+            return null;
+        }
+        Index current = index;
+        Asset asset = current.byId.get(key);
+        if (asset == null) {
+            asset = current.byDisplayName.get(key);
+        }
+        if (asset == null) {
+            asset = current.bySymbol.get(key.toUpperCase(Locale.ROOT));
+        }
+        return asset;
+    }
+
+    /**
+     * Returns the canonical id instance for a stored key, so holdings share
+     * interned ids. Unknown keys are returned unchanged.
+     */
+    String canonicalId(String key) {
+        Asset asset = resolve(key);
+        return asset == null ? key : asset.id;
+    }
+
+    List<String> ids() {
+        List<Asset> assets = index.assets;
+        List<String> ids = new ArrayList<>(assets.size());
+        for (Asset asset : assets) {
+            ids.add(asset.id);
+        }
+        return ids;
+    }
+
+    int size() {
+        return index.assets.size();
+    }
+
+    /**
+     * Type-ahead search. Exact symbol matches come first, then prefix matches
+     * on symbol, name or id, then names containing the query.
+     */
+    List<Asset> search(String query, int limit) {
+        Index current = index;
+        String key = query.trim().toLowerCase(Locale.ROOT);
+        if (key.isEmpty()) {
+            return current.assets.subList(0, Math.min(limit, current.assets.size()));
+        }
+
+        Set<Asset> results = new LinkedHashSet<>();
+        Asset exact = current.bySymbol.get(key.toUpperCase(Locale.ROOT));
+        if (exact != null) {
+            results.add(exact);
+        }
+
+        // Prefix matches: a contiguous range in the sorted keys
+        int from = Arrays.binarySearch(current.searchKeys, key);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        for (int i = from; i < current.searchKeys.length && results.size() < limit; i++) {
+            if (!current.searchKeys[i].startsWith(key)) {
+                break;
+            }
+            results.add(current.searchAssets[i]);
+        }
+
+        // Fall back to substring matches on the name
+        for (int i = 0; i < current.lowerNames.length && results.size() < limit; i++) {
+            if (current.lowerNames[i].contains(key)) {
+                results.add(current.assets.get(i));
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    /** Immutable snapshot of the catalog and its lookup tables. */
+    private static final class Index {
+        final List<Asset> assets;
+        final Map<String, Asset> byId = new HashMap<>();
+        final Map<String, Asset> bySymbol = new HashMap<>();
+        final Map<String, Asset> byDisplayName = new HashMap<>();
+        final String[] lowerNames;
+        final String[] searchKeys;
+        final Asset[] searchAssets;
+
+        Index(List<Asset> assets) {
+            this.assets = Collections.unmodifiableList(new ArrayList<>(assets));
+            this.lowerNames = new String[assets.size()];
+
+            List<SearchKey> keys = new ArrayList<>(assets.size() * 3);
+            for (int i = 0; i < assets.size(); i++) {
+                Asset asset = assets.get(i);
+                byId.put(asset.id, asset);
+                bySymbol.putIfAbsent(asset.symbol.toUpperCase(Locale.ROOT), asset);
+                byDisplayName.put(asset.displayName, asset);
+                lowerNames[i] = asset.name.toLowerCase(Locale.ROOT);
+
+                keys.add(new SearchKey(asset.symbol.toLowerCase(Locale.ROOT), asset));
+                keys.add(new SearchKey(lowerNames[i], asset));
+                keys.add(new SearchKey(asset.id, asset));
+            }
+            keys.sort(Comparator.comparing(entry -> entry.key));
+            searchKeys = new String[keys.size()];
+            searchAssets = new Asset[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                searchKeys[i] = keys.get(i).key;
+                searchAssets[i] = keys.get(i).asset;
+            }
+        }
+    }
+
+    private static final class SearchKey {
+        final String key;
+        final Asset asset;
+
+        SearchKey(String key, Asset asset) {
+            this.key = key;
+            this.asset = asset;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Type-ahead text field over the asset catalog. Each keystroke runs an
+ * indexed search capped at a few dozen results, so it stays responsive with
+ * catalogs of 10k+ assets.
+ */
+class AssetSearchField extends JTextField {
+
+    private static final int MAX_RESULTS = 50;
+
+    private final AssetRegistry registry;
+    private final DefaultListModel<Asset> results = new DefaultListModel<>();
+    private final JList<Asset> resultList = new JList<>(results);
+    private final JPopupMenu popup = new JPopupMenu();
+    private final JScrollPane scrollPane = new JScrollPane(resultList);
+    private Asset selectedAsset;
+    private boolean choosing;
+
+    public AssetSearchField(AssetRegistry registry) {
+        this.registry = registry;
+
+        resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        resultList.setFocusable(false);
+        resultList.setBackground(new Color(51, 65, 85));
+        resultList.setForeground(Color.WHITE);
+        resultList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value,
+                    int index, boolean isSelected, boolean cellHasFocus) {
+                JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                label.setOpaque(true);
+                label.setBackground(isSelected ? new Color(37, 99, 235) : new Color(51, 65, 85));
+                label.setForeground(Color.WHITE);
+                label.setBorder(BorderFactory.createEmptyBorder(8, 10, 8, 10));
+                return label;
+            }
+        });
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = resultList.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    choose(results.get(index));
+                }
+            }
+        });
+
+        scrollPane.setBorder(BorderFactory.createLineBorder(new Color(71, 85, 105)));
+        popup.setFocusable(false);
+        popup.setBorder(BorderFactory.createEmptyBorder());
+        popup.add(scrollPane);
+
+        getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                textChanged();
+            }
+        });
+
+        bindKey(KeyEvent.VK_DOWN, "nextResult", () -> moveSelection(1));
+        bindKey(KeyEvent.VK_UP, "previousResult", () -> moveSelection(-1));
+        bindKey(KeyEvent.VK_ESCAPE, "hideResults", () -> popup.setVisible(false));
+        bindKey(KeyEvent.VK_ENTER, "chooseResult", () -> {
+            Asset asset = resultList.getSelectedValue();
+            if (popup.isVisible() && asset != null) {
+                choose(asset);
+            }
+        });
+    }
+
+    /**
+     * Returns the asset picked from the list, or the one whose id, symbol or
+     * display name was typed exactly. Null if neither.
+     */
+    public Asset getSelectedAsset() {
+        if (selectedAsset != null) {
+            return selectedAsset;
+        }
+        return registry.resolve(getText().trim());
+    }
+
+    public void clear() {
+        setText("");
+        selectedAsset = null;
+        popup.setVisible(false);
+    }
+
+    private void textChanged() {
+        if (choosing) {
+            return;
+        }
+        selectedAsset = null;
+        // Document listeners must not touch the popup directly
+        SwingUtilities.invokeLater(this::updateResults);
+    }
+
+    private void updateResults() {
+        String query = getText();
+        if (query.trim().isEmpty() || !isShowing()) {
+            popup.setVisible(false);
+            return;
+        }
+
+        List<Asset> matches = registry.search(query, MAX_RESULTS);
+        results.clear();
+        for (Asset asset : matches) {
+            results.addElement(asset);
+        }
+        if (matches.isEmpty()) {
+            popup.setVisible(false);
+            return;
+        }
+        resultList.setSelectedIndex(0);
+        resultList.setVisibleRowCount(Math.min(matches.size(), 8));
+        popup.setPopupSize(getWidth(), scrollPane.getPreferredSize().height);
+        if (popup.isVisible()) {
+            popup.pack();
+        } else {
+            popup.show(this, 0, getHeight());
+        }
+    }
+
+    private void moveSelection(int delta) {
+        if (!popup.isVisible() || results.isEmpty()) {
+            updateResults();
+            return;
+        }
+        int index = Math.max(0, Math.min(results.size() - 1, resultList.getSelectedIndex() + delta));
+        resultList.setSelectedIndex(index);
+        resultList.ensureIndexIsVisible(index);
+    }
+
+    private void choose(Asset asset) {
+        choosing = true;
+        try {
+            setText(asset.displayName);
+        } finally {
+            choosing = false;
+        }
+        selectedAsset = asset;
+        popup.setVisible(false);
+    }
+
+    private void bindKey(int keyCode, String name, Runnable action) {
+        getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(keyCode, 0), name);
+        getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Splits large id lists into size-bounded batches and fetches them
+ * concurrently from the wrapped provider.
+ *
+ * A batch closes when it reaches the id limit or when its comma-separated
+ * ids would exceed the character budget, which keeps request URLs under
+ * common length limits. Batches run on the shared {@link IoExecutor}; at
+ * most {@code concurrency} of them are in flight.
+ * Every batch reports into the caller's consumer, which must be thread-safe.
+ */
+class BatchingPriceProvider implements PriceProvider {
+
+    static final String BATCH_SIZE_PROPERTY = "cryptoportfolio.batchSize";
+    static final String CONCURRENCY_PROPERTY = "cryptoportfolio.fetchConcurrency";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int MAX_ID_CHARS = 1800;
+
+    private final PriceProvider delegate;
+    private final int maxIds;
+    private final int maxChars;
+    private final Semaphore inFlight;
+
+    public BatchingPriceProvider(PriceProvider delegate, int maxIds, int maxChars, int concurrency) {
+        this.delegate = delegate;
+        this.maxIds = maxIds;
+        this.maxChars = maxChars;
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    static BatchingPriceProvider wrap(PriceProvider delegate) {
+        int batchSize = Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+        int concurrency = Integer.getInteger(CONCURRENCY_PROPERTY, DEFAULT_CONCURRENCY);
+        return new BatchingPriceProvider(delegate, Math.max(1, batchSize), MAX_ID_CHARS, Math.max(1, concurrency));
+    }
+
+    @Override
+    public void fetchPrices(Collection<String> ids, PriceConsumer consumer) throws IOException {
+        List<List<String>> batches = split(ids);
+        if (batches.isEmpty()) {
+            return;
+        }
+        if (batches.size() == 1) {
+            delegate.fetchPrices(batches.get(0), consumer);
+            return;
+        }
+
+        // Permits are taken here so that waiting batches do not hold I/O threads
+        List<Future<?>> futures = new ArrayList<>(batches.size());
+        for (List<String> batch : batches) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while fetching prices", ex);
+            }
+            futures.add(IoExecutor.shared().submit(() -> {
+                try {
+                    delegate.fetchPrices(batch, consumer);
+                } finally {
+                    inFlight.release();
+                }
+                return null;
+            }));
+        }
+
+        // Wait for every batch so partial results are complete before reporting failure
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while fetching prices", ex);
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause() instanceof IOException
+                            ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public int requestCount(Collection<String> ids) {
+        return split(ids).size();
+    }
+
+    List<List<String>> split(Collection<String> ids) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int chars = 0;
+        for (String id : ids) {
+            int length = id.length() + (current.isEmpty() ? 0 : 1);
+            if (!current.isEmpty() && (current.size() == maxIds || chars + length > maxChars)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                chars = 0;
+                length = id.length();
+            }
+            current.add(id);
+            chars += length;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+}
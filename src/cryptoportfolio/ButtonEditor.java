@@ -8,7 +8,6 @@ package cryptoportfolio;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.FlowLayout;
-import java.awt.Font;
 import javax.swing.DefaultCellEditor;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -35,8 +34,8 @@ class ButtonEditor extends DefaultCellEditor {
         panel.setOpaque(true);
 
         editButton = new JButton("Edit");
-        editButton.setFont(new Font("Arial", Font.PLAIN, 11));
-        editButton.setBackground(new Color(37, 99, 235));
+        editButton.setFont(Theme.BUTTON_FONT);
+        editButton.setBackground(Theme.ACCENT);
         editButton.setForeground(Color.WHITE);
         editButton.setFocusPainted(false);
         editButton.setBorderPainted(false);
@@ -45,12 +44,12 @@ class ButtonEditor extends DefaultCellEditor {
         editButton.setUI(new javax.swing.plaf.basic.BasicButtonUI());
         editButton.addActionListener(e -> {
             fireEditingStopped();
-            actionListener.editCrypto();
+            actionListener.editCrypto(currentRow);
         });
 
         removeButton = new JButton("Remove");
-        removeButton.setFont(new Font("Arial", Font.PLAIN, 11));
-        removeButton.setBackground(new Color(220, 38, 38));
+        removeButton.setFont(Theme.BUTTON_FONT);
+        removeButton.setBackground(Theme.DANGER);
         removeButton.setForeground(Color.WHITE);
         removeButton.setFocusPainted(false);
         removeButton.setBorderPainted(false);
@@ -60,7 +59,7 @@ class ButtonEditor extends DefaultCellEditor {
 
         removeButton.addActionListener(e -> {
             fireEditingStopped();
-            actionListener.removeCrypto();
+            actionListener.removeCrypto(currentRow);
         });
 
         panel.add(editButton);
@@ -70,7 +69,7 @@ class ButtonEditor extends DefaultCellEditor {
     public Component getTableCellEditorComponent(JTable table, Object value,
             boolean isSelected, int row, int column) {
         currentRow = row;
-        panel.setBackground(new Color(51, 65, 85));
+        panel.setBackground(Theme.SELECTION);
         return panel;
     }
 
@@ -82,9 +81,10 @@ class ButtonEditor extends DefaultCellEditor {
         return currentRow;
     }
     
+    /** Told which view row's button was pressed. */
     interface ActionListener{
-        public void editCrypto();
-        public void removeCrypto();        
+        public void editCrypto(int row);
+        public void removeCrypto(int row);        
     }
 }
 
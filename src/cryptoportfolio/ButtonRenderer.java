@@ -9,7 +9,6 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.FlowLayout;
-import java.awt.Font;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import javax.swing.BorderFactory;
@@ -33,8 +32,8 @@ class ButtonRenderer extends JPanel implements TableCellRenderer {
 
         //editButton = createCellButton("Edit", new Color(37, 99, 235));
         editButton = new JButton("Edit");
-        editButton.setFont(new Font("Arial", Font.PLAIN, 11));
-        editButton.setBackground(new Color(37, 99, 235));
+        editButton.setFont(Theme.BUTTON_FONT);
+        editButton.setBackground(Theme.ACCENT);
         editButton.setForeground(Color.WHITE);
         editButton.setFocusPainted(false);
         editButton.setBorderPainted(false);
@@ -44,8 +43,8 @@ class ButtonRenderer extends JPanel implements TableCellRenderer {
 
         //removeButton = createCellButton("Removedd", new Color(220, 38, 38));
         removeButton = new JButton("Remove");
-        removeButton.setFont(new Font("Arial", Font.PLAIN, 11));
-        removeButton.setBackground(new Color(220, 38, 38));
+        removeButton.setFont(Theme.BUTTON_FONT);
+        removeButton.setBackground(Theme.DANGER);
         removeButton.setForeground(Color.WHITE);
         removeButton.setFocusPainted(false);
         removeButton.setBorderPainted(false);
@@ -59,13 +58,13 @@ class ButtonRenderer extends JPanel implements TableCellRenderer {
 
     public Component getTableCellRendererComponent(JTable table, Object value,
             boolean isSelected, boolean hasFocus, int row, int column) {
-        setBackground(isSelected ? new Color(51, 65, 85) : new Color(30, 41, 59));
+        setBackground(isSelected ? Theme.SELECTION : Theme.BACKGROUND);
         return this;
     }
 
     private JButton createCellButton(String text, Color bgColor) {
         JButton button = new JButton(text);
-        button.setFont(new Font("Arial", Font.PLAIN, 11));
+        button.setFont(Theme.BUTTON_FONT);
         button.setBackground(bgColor);
         button.setForeground(Color.WHITE);
         button.setFocusPainted(false);
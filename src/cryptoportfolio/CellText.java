@@ -0,0 +1,88 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reusable character buffer for formatting cell numbers without creating
+ * strings. Fixed-point values are written digit by digit; only magnitudes
+ * too large for a long after scaling fall back to {@link String#format}.
+ */
+final class CellText {
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+    };
+
+    char[] chars = new char[32];
+    int length;
+
+    CellText clear() {
+        length = 0;
+        return this;
+    }
+
+    CellText append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = c;
+        return this;
+    }
+
+    /** Appends the value rounded to 0-8 decimals, like {@code %.<decimals>f}. */
+    CellText appendFixed(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return appendString(Double.toString(value));
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale;
+        if (scaled >= Long.MAX_VALUE / 10) {
+            return appendString(String.format(Locale.ROOT, "%." + decimals + "f", value));
+        }
+        long units = Math.round(scaled);
+        if (value < 0 && units != 0) {
+            append('-');
+        }
+        appendLong(units / scale);
+        if (decimals > 0) {
+            append('.');
+            long fraction = units % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                append((char) ('0' + fraction / digit % 10));
+            }
+        }
+        return this;
+    }
+
+    private void appendLong(long value) {
+        int start = length;
+        do {
+            append((char) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        // Digits were written least significant first
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+    }
+
+    private CellText appendString(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
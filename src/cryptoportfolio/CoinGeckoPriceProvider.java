@@ -0,0 +1,78 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Prices from the public CoinGecko {@code simple/price} endpoint.
+ *
+ * Requests go through the shared {@link HttpFetcher}. Ids are sorted so the
+ * same set of coins always maps to the same URL, which lets an unchanged
+ * feed be answered with 304 and replayed from the last parsed response.
+ */
+class CoinGeckoPriceProvider implements PriceProvider {
+
+    private static final String API_URL = "https://api.coingecko.com/api/v3/simple/price";
+
+    private static final HttpFetcher.BodyParser<Quotes> PARSER = body -> {
+        Quotes quotes = new Quotes();
+        PriceJsonParser.parse(body, quotes);
+        return quotes;
+    };
+
+    private final HttpFetcher http;
+
+    CoinGeckoPriceProvider() {
+        this(HttpFetcher.SHARED);
+    }
+
+    CoinGeckoPriceProvider(HttpFetcher http) {
+        this.http = http;
+    }
+
+    @Override
+    public void fetchPrices(Collection<String> ids, PriceConsumer consumer) throws IOException {
+        StringBuilder idList = new StringBuilder();
+        for (String id : new TreeSet<>(ids)) {
+            if (idList.length() > 0) idList.append(",");
+            idList.append(id);
+        }
+
+        String apiUrl = API_URL + "?ids=" + idList + "&vs_currencies=usd&include_24hr_change=true";
+        http.get(apiUrl, PARSER).replay(consumer);
+    }
+
+    /** Parsed response, kept so a 304 can be replayed. Never modified after parsing. */
+    private static final class Quotes implements PriceConsumer {
+        final List<String> ids = new ArrayList<>();
+        double[] prices = new double[16];
+        double[] changes = new double[16];
+
+        @Override
+        public void accept(String id, double priceUSD, double change24h) {
+            int i = ids.size();
+            if (i == prices.length) {
+                prices = Arrays.copyOf(prices, i * 2);
+                changes = Arrays.copyOf(changes, i * 2);
+            }
+            ids.add(id);
+            prices[i] = priceUSD;
+            changes[i] = change24h;
+        }
+
+        void replay(PriceConsumer consumer) {
+            for (int i = 0; i < ids.size(); i++) {
+                consumer.accept(ids.get(i), prices[i], changes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running amount and lot count per coin, in the order the coins were first
+ * added. Each store keeps one current with its changes, so per-coin totals
+ * never need a pass over the lots. Not thread safe.
+ */
+final class CoinTotals {
+
+    private final Map<String, Double> amounts = new LinkedHashMap<>();
+    private final Map<String, Integer> lots = new LinkedHashMap<>();
+
+    /** Adds {@code delta} to the coin's amount and {@code lotDelta} to its lots; a coin goes with its last lot. */
+    void add(String coinId, double delta, int lotDelta) {
+        int count = lots.getOrDefault(coinId, 0) + lotDelta;
+        if (count > 0) {
+            amounts.merge(coinId, delta, Double::sum);
+            lots.put(coinId, count);
+        } else {
+            amounts.remove(coinId);
+            lots.remove(coinId);
+        }
+    }
+
+    void clear() {
+        amounts.clear();
+        lots.clear();
+    }
+
+    int lotCount() {
+        int sum = 0;
+        for (int count : lots.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    HoldingsSnapshot snapshot() {
+        return HoldingsSnapshot.of(new LinkedHashMap<>(amounts), new LinkedHashMap<>(lots));
+    }
+}
@@ -5,6 +5,10 @@
  */
 package cryptoportfolio;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
@@ -14,15 +18,35 @@ import java.io.Serializable;
 // CryptoHolding class
 class CryptoHolding implements Serializable {
     private static final long serialVersionUID = 1L;
-    String name;
+
+    // Keeps the serialized form of the original portfolio.dat, which stored
+    // the display name ("Bitcoin (BTC)") in a field called name
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("amount", double.class)
+    };
+
+    String coinId;
     double amount;
-    double priceUSD;
-    double change24h;
+    // Position in the store's list, kept current by the store so callers need not search for it
+    transient int index;
 
-    public CryptoHolding(String name, double amount) {
-        this.name = name;
+    public CryptoHolding(String coinId, double amount) {
+        this.coinId = coinId;
         this.amount = amount;
-        this.priceUSD = 0.0;
-        this.change24h = 0.0;
     }
-}
\ No newline at end of file
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        // A display name at this point; stores resolve it through AssetRegistry
+        coinId = (String) fields.get("name", null);
+        amount = fields.get("amount", 0.0);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", coinId);
+        fields.put("amount", amount);
+        out.writeFields();
+    }
+}
@@ -1,121 +1,60 @@
 package cryptoportfolio;
 
 import javax.swing.*;
+import javax.swing.event.*;
 import javax.swing.table.*;
+import javax.swing.border.Border;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.*;
 import java.util.*;
-import org.json.*;
-import javax.swing.Timer;
-import javax.imageio.ImageIO;
+import java.util.List;
 
 public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.ActionListener {
-    private DefaultTableModel tableModel;
+    private HoldingsTableModel tableModel;
     private JTable portfolioTable;
     private JLabel totalValueLabel;
-    private JComboBox<String> cryptoComboBox;
-    private ButtonEditor buttonEditor;
+    private AssetSearchField cryptoSearchField;
     private JTextField amountField;
-    private ArrayList<CryptoHolding> holdings;
-    private Timer refreshTimer;
-    private Map<String, ImageIcon> imageCache;
-    
-    // Crypto data map: Symbol -> Full Name
-    private final Map<String, String> cryptoMap = new LinkedHashMap<String, String>() {{
-        put("bitcoin", "Bitcoin (BTC)");
-        put("ethereum", "Ethereum (ETH)");
-        put("cardano", "Cardano (ADA)");
-        put("solana", "Solana (SOL)");
-        put("binancecoin", "Binance Coin (BNB)");
-        put("ripple", "Ripple (XRP)");
-        put("polkadot", "Polkadot (DOT)");
-        put("dogecoin", "Dogecoin (DOGE)");
-        put("matic-network", "Polygon (MATIC)");
-        put("avalanche-2", "Avalanche (AVAX)");
-    }};
-    
-    // Image file names for each crypto (from resources folder)
-    private final Map<String, String> imageFileMap = new HashMap<String, String>() {{
-        put("Bitcoin (BTC)", "bitcoin.png");
-        put("Ethereum (ETH)", "ethereum.png");
-        put("Cardano (ADA)", "cardano.png");
-        put("Solana (SOL)", "solana.png");
-        put("Binance Coin (BNB)", "binance.png");
-        put("Ripple (XRP)", "ripple.png");
-        put("Polkadot (DOT)", "polkadot.png");
-        put("Dogecoin (DOGE)", "dogecoin.png");
-        put("Polygon (MATIC)", "polygon.png");
-        put("Avalanche (AVAX)", "avalanche.png");
-    }};
-
+    private HoldingStore holdingStore;
+    private PriceProvider priceProvider;
+    private PriceCache priceCache;
+    private AssetRegistry assetRegistry;
+    private RefreshScheduler refreshScheduler;
+    private PriceUpdatePipeline pricePipeline;
+    private PriceStream priceStream;
+    private PriceHistory priceHistory;
+    private IconCache iconCache;
+    private PortfolioChart portfolioChart;
+    // Written on the EDT after every holdings change, read from any thread
+    private volatile HoldingsSnapshot heldSnapshot = HoldingsSnapshot.EMPTY;
+    // EDT only: the snapshot including changes not yet published
+    private HoldingsSnapshot held = HoldingsSnapshot.EMPTY;
+    private TradeLedger tradeLedger;
+    private ProfitAndLoss profitAndLoss;
+    private JLabel profitLabel;
+    private ExchangeRates exchangeRates;
+    private JComboBox<String> currencyBox;
+    private boolean updatingCurrencies;
+    private JLabel subtitleLabel;
+    private CryptoTableCellRenderer cellRenderer;
+    
+    // Cached prices older than this are fetched again (just under the auto-refresh period)
+    private static final long PRICE_TTL_MILLIS = 55000;
+    
     public CryptoPortfolioTracker() {
-        imageCache = new HashMap<>();
-        holdings = new ArrayList<>();
+        assetRegistry = AssetRegistry.fromSystemProperties();
+        holdingStore = HoldingStore.fromSystemProperties(assetRegistry);
+        priceProvider = PriceProvider.fromSystemProperties();
+        priceCache = new PriceCache(PRICE_TTL_MILLIS);
+        startHistory();
         loadHoldings();
-        loadCryptoImages();
+        loadLedger();
+        exchangeRates = ExchangeRates.fromSystemProperties(this::currencyChanged);
         initializeUI();
-        fetchPrices();
         startAutoRefresh();
     }
     
-    private void loadCryptoImages() {
-        for (Map.Entry<String, String> entry : imageFileMap.entrySet()) {
-            try {
-                // Try to load from resources folder in src directory
-                InputStream imageStream = getClass().getResourceAsStream("/resources/" + entry.getValue());
-                
-                if (imageStream != null) {
-                    BufferedImage image = ImageIO.read(imageStream);
-                    if (image != null) {
-                        Image scaledImage = image.getScaledInstance(32, 32, Image.SCALE_SMOOTH);
-                        imageCache.put(entry.getKey(), new ImageIcon(scaledImage));
-                    }
-                    imageStream.close();
-                } else {
-                    // If not found in classpath, try loading from file system
-                    File imageFile = new File("src/resources/" + entry.getValue());
-                    if (imageFile.exists()) {
-                        BufferedImage image = ImageIO.read(imageFile);
-                        if (image != null) {
-                            Image scaledImage = image.getScaledInstance(32, 32, Image.SCALE_SMOOTH);
-                            imageCache.put(entry.getKey(), new ImageIcon(scaledImage));
-                        }
-                    } else {
-                        System.err.println("Image not found: " + entry.getValue());
-                        imageCache.put(entry.getKey(), createPlaceholderIcon(entry.getKey()));
-                    }
-                }
-            } catch (Exception ex) {
-                System.err.println("Failed to load image for " + entry.getKey() + ": " + ex.getMessage());
-                imageCache.put(entry.getKey(), createPlaceholderIcon(entry.getKey()));
-            }
-        }
-    }
-    
-    private ImageIcon createPlaceholderIcon(String cryptoName) {
-        BufferedImage placeholder = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = placeholder.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        // Draw a circle with first letter
-        g2d.setColor(new Color(100, 100, 100));
-        g2d.fillOval(0, 0, 32, 32);
-        
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 16));
-        String symbol = cryptoName.substring(cryptoName.indexOf("(") + 1, cryptoName.indexOf(")"));
-        FontMetrics fm = g2d.getFontMetrics();
-        int x = (32 - fm.stringWidth(symbol.substring(0, 1))) / 2;
-        int y = ((32 - fm.getHeight()) / 2) + fm.getAscent();
-        g2d.drawString(symbol.substring(0, 1), x, y);
-        g2d.dispose();
-        
-        return new ImageIcon(placeholder);
-    }
-
     private void initializeUI() {
         setTitle("Crypto Portfolio Tracker");
         setSize(1200, 700);
@@ -162,7 +101,7 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
         titleLabel.setForeground(Color.WHITE);
         
-        JLabel subtitleLabel = new JLabel("Real-time USD conversion");
+        subtitleLabel = new JLabel("Real-time USD conversion");
         subtitleLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         subtitleLabel.setForeground(new Color(148, 163, 184));
         
@@ -173,17 +112,35 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         
         // Refresh button
         JButton refreshButton = createStyledButton("Refresh Prices", new Color(73, 170, 77));
-        refreshButton.addActionListener(e -> fetchPrices());
+        refreshButton.addActionListener(e -> fetchPrices(true));
+        
+        // Import button
+        JButton importButton = createStyledButton("Import CSV", new Color(37, 99, 235));
+        importButton.addActionListener(e -> importTrades());
+        
+        // Display currency; switching only changes how cached USD values are shown
+        currencyBox = new JComboBox<>(exchangeRates.codes().toArray(new String[0]));
+        currencyBox.setFont(new Font("Arial", Font.BOLD, 13));
+        currencyBox.setBackground(new Color(51, 65, 85));
+        currencyBox.setForeground(Color.WHITE);
+        currencyBox.setToolTipText("Display currency");
+        currencyBox.addActionListener(e -> {
+            if (!updatingCurrencies) {
+                exchangeRates.select((String) currencyBox.getSelectedItem());
+            }
+        });
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         buttonPanel.setBackground(new Color(30, 41, 59));
+        buttonPanel.add(currencyBox);
+        buttonPanel.add(importButton);
         buttonPanel.add(refreshButton);
         
         headerPanel.add(titlePanel, BorderLayout.WEST);
         headerPanel.add(buttonPanel, BorderLayout.EAST);
         
         // Total value panel
-        JPanel totalPanel = new JPanel(new GridLayout(2, 1));
+        JPanel totalPanel = new JPanel(new GridLayout(3, 1));
         totalPanel.setBackground(new Color(37, 99, 235));
         totalPanel.setBorder(BorderFactory.createEmptyBorder(15, 20, 15, 20));
         
@@ -195,14 +152,24 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         totalValueLabel.setFont(new Font("Arial", Font.BOLD, 32));
         totalValueLabel.setForeground(Color.WHITE);
         
+        profitLabel = new JLabel(" ");
+        profitLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        profitLabel.setForeground(new Color(224, 231, 255));
+        
         totalPanel.add(totalLabel);
         totalPanel.add(totalValueLabel);
+        totalPanel.add(profitLabel);
         
         JPanel outerPanel = new JPanel(new BorderLayout());
         outerPanel.setBackground(new Color(30, 41, 59));
         outerPanel.add(headerPanel, BorderLayout.NORTH);
         outerPanel.add(totalPanel, BorderLayout.CENTER);
         
+        // Value chart below the total
+        portfolioChart = new PortfolioChart(priceHistory);
+        portfolioChart.setHoldings(heldSnapshot.amounts);
+        outerPanel.add(portfolioChart, BorderLayout.SOUTH);
+        
         return outerPanel;
     }
     
@@ -224,16 +191,46 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         tableTitle.setForeground(Color.WHITE);
         tableHeaderPanel.add(tableTitle, BorderLayout.WEST);
         
+        // Filters the table on every keystroke
+        JTextField filterField = new JTextField();
+        filterField.setPreferredSize(new Dimension(220, 30));
+        filterField.setToolTipText("Filter by name or symbol");
+        filterField.setBackground(new Color(30, 41, 59));
+        filterField.setForeground(Color.WHITE);
+        filterField.setCaretColor(Color.WHITE);
+        filterField.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(71, 85, 105)),
+            BorderFactory.createEmptyBorder(5, 10, 5, 10)
+        ));
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                tableModel.setFilter(filterField.getText());
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                tableModel.setFilter(filterField.getText());
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        tableHeaderPanel.add(filterField, BorderLayout.EAST);
+        
+        // Icons load in the background; rows show placeholders until then
+        iconCache = IconCache.fromSystemProperties(() -> portfolioTable.repaint());
+        
         // Create table
-        String[] columnNames = {"Cryptocurrency", "Amount", "Price (USD)", "Value (USD)", "24h Change", "Actions"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
+        portfolioTable = new HoldingsTable(tableModel) {
             @Override
-            public boolean isCellEditable(int row, int column) {
-                return column == 5; // Only Actions column is editable
+            public String getToolTipText(MouseEvent e) {
+                int row = rowAtPoint(e.getPoint());
+                return row < 0 ? null : positionSummary(convertRowIndexToModel(row));
             }
         };
-        
-        portfolioTable = new JTable(tableModel);
+        ToolTipManager.sharedInstance().registerComponent(portfolioTable);
         portfolioTable.setRowHeight(50);
         portfolioTable.setBackground(new Color(30, 41, 59));
         portfolioTable.setForeground(Color.WHITE);
@@ -245,28 +242,70 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         // Custom header renderer
         JTableHeader header = portfolioTable.getTableHeader();
         header.setDefaultRenderer(new DefaultTableCellRenderer() {
+        private final Border headerBorder = BorderFactory.createEmptyBorder(10, 5, 10, 5);
+        
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value,
                 boolean isSelected, boolean hasFocus, int row, int column) {
                 JLabel label = (JLabel) super.getTableCellRendererComponent(
                         table, value, isSelected, hasFocus, row, column);
-                label.setBackground(new Color(37, 99, 235));
-                label.setForeground(Color.WHITE);
-                label.setFont(new Font("Arial", Font.BOLD, 12));
+                if (table.convertColumnIndexToModel(column) == tableModel.sortColumn()) {
+                    label.setText(value + (tableModel.isSortAscending() ? " \u25B2" : " \u25BC"));
+                }
+                label.setBackground(Theme.ACCENT);
+                label.setForeground(Theme.TEXT);
+                label.setFont(Theme.HEADER_FONT);
                 label.setHorizontalAlignment(SwingConstants.CENTER);
-                label.setBorder(BorderFactory.createEmptyBorder(10, 5, 10, 5));
+                label.setBorder(headerBorder);
                 label.setOpaque(true);
                 return label;
             }
         });
+        
+        // Clicking a header sorts by that column, clicking it again reverses the order
+        header.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = header.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    tableModel.sortBy(portfolioTable.convertColumnIndexToModel(column));
+                    header.repaint();
+                }
+            }
+        });
 
         // Custom cell renderer with icons
-        portfolioTable.setDefaultRenderer(Object.class, new CryptoTableCellRenderer(imageCache));
+        cellRenderer = CryptoTableCellRenderer.fromSystemProperties(iconCache::get);
+        portfolioTable.setDefaultRenderer(Object.class, cellRenderer);
+        portfolioTable.setDefaultRenderer(Asset.class, cellRenderer);
+        portfolioTable.setDefaultRenderer(Double.class, cellRenderer);
+        
+        // Button column: painted boxes with hit-testing, or real buttons in classic mode
+        if (cellRenderer.isLightweight()) {
+            ActionsCell actionsCell = new ActionsCell();
+            portfolioTable.getColumn("Actions").setCellRenderer(actionsCell);
+            actionsCell.install(portfolioTable, HoldingsTableModel.COL_ACTIONS, this);
+            tableModel.setActionsEditable(false);
+        } else {
+            portfolioTable.getColumn("Actions").setCellRenderer(new ButtonRenderer());        
+            portfolioTable.getColumn("Actions").setCellEditor(new ButtonEditor(new JCheckBox(), this));
+        }
         
-        // Button column
-        portfolioTable.getColumn("Actions").setCellRenderer(new ButtonRenderer());        
-        buttonEditor = new ButtonEditor(new JCheckBox(), this);
-        portfolioTable.getColumn("Actions").setCellEditor(buttonEditor);
+        // Clicking the name of a coin with several lots shows or hides them
+        portfolioTable.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = portfolioTable.rowAtPoint(e.getPoint());
+                int column = portfolioTable.columnAtPoint(e.getPoint());
+                if (row < 0 || portfolioTable.convertColumnIndexToModel(column) != HoldingsTableModel.COL_NAME) {
+                    return;
+                }
+                int modelRow = portfolioTable.convertRowIndexToModel(row);
+                if (!tableModel.isLotRow(modelRow) && tableModel.lotCount(modelRow) > 1) {
+                    tableModel.setExpanded(modelRow, !tableModel.isExpanded(modelRow));
+                }
+            }
+        });
         
         JScrollPane scrollPane = new JScrollPane(portfolioTable);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
@@ -294,66 +333,25 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         JPanel formPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 0));
         formPanel.setBackground(new Color(30, 41, 59));
         
-        // Crypto ComboBox
+        // Crypto search field
         JPanel cryptoPanel = new JPanel(new BorderLayout(5, 5));
         cryptoPanel.setBackground(new Color(30, 41, 59));
-        JLabel cryptoLabel = new JLabel("Select Cryptocurrency");
+        JLabel cryptoLabel = new JLabel("Search Cryptocurrency");
         cryptoLabel.setFont(new Font("Arial", Font.PLAIN, 12));
         cryptoLabel.setForeground(new Color(203, 213, 225));
         
-        String[] cryptoNames = cryptoMap.values().toArray(new String[0]);
-        cryptoComboBox = new JComboBox<>(cryptoNames);
-        cryptoComboBox.setPreferredSize(new Dimension(250, 35));
-        cryptoComboBox.setBackground(new Color(51, 65, 85));
-        cryptoComboBox.setForeground(Color.WHITE);
-        
-        // Custom renderer for dropdown items
-        cryptoComboBox.setRenderer(new DefaultListCellRenderer() {
-            @Override
-            public Component getListCellRendererComponent(JList<?> list, Object value,
-                    int index, boolean isSelected, boolean cellHasFocus) {
-                JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-        
-                 // Always set opaque
-                label.setOpaque(true);
-
-                if (index == -1) {
-                    // This is the displayed value (not in dropdown)
-                    label.setBackground(new Color(51, 65, 85));
-                    label.setForeground(Color.WHITE);
-                } 
-                else if (isSelected) {
-                    setBackground(new Color(37, 99, 235));
-                    setForeground(Color.WHITE);
-                } else {
-                    setBackground(new Color(51, 65, 85));
-                    setForeground(Color.WHITE);
-                }
-
-                setBorder(BorderFactory.createEmptyBorder(8, 10, 8, 10));
-                return label;
-            }
-        });
-
-        // Style the ComboBox button area
-        cryptoComboBox.setUI(new javax.swing.plaf.basic.BasicComboBoxUI() {
-            @Override
-            protected JButton createArrowButton() {
-                JButton button = super.createArrowButton();
-                button.setBackground(new Color(51, 65, 85));
-                button.setBorder(BorderFactory.createEmptyBorder());
-                return button;
-            }
-            
-            @Override
-            public void paintCurrentValueBackground(Graphics g, Rectangle bounds, boolean hasFocus) {
-                g.setColor(new Color(51, 65, 85));
-                g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
-            }
-        });
+        cryptoSearchField = new AssetSearchField(assetRegistry);
+        cryptoSearchField.setPreferredSize(new Dimension(250, 35));
+        cryptoSearchField.setBackground(new Color(51, 65, 85));
+        cryptoSearchField.setForeground(Color.WHITE);
+        cryptoSearchField.setCaretColor(Color.WHITE);
+        cryptoSearchField.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(71, 85, 105)),
+            BorderFactory.createEmptyBorder(5, 10, 5, 10)
+        ));
         
         cryptoPanel.add(cryptoLabel, BorderLayout.NORTH);
-        cryptoPanel.add(cryptoComboBox, BorderLayout.CENTER);
+        cryptoPanel.add(cryptoSearchField, BorderLayout.CENTER);
         
         // Amount Field
         JPanel amountPanel = new JPanel(new BorderLayout(5, 5));
@@ -425,7 +423,7 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
     }
     
     private void addCrypto() {
-        String selectedCrypto = (String) cryptoComboBox.getSelectedItem();
+        Asset selectedCrypto = cryptoSearchField.getSelectedAsset();
         String amountText = amountField.getText().trim();
         
         if (selectedCrypto == null || amountText.isEmpty()) {
@@ -440,13 +438,19 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
                 return;
             }
             
-            CryptoHolding holding = new CryptoHolding(selectedCrypto, amount);
-            holdings.add(holding);
-            saveHoldings();
+            double price = askPrice(selectedCrypto.id, selectedCrypto.displayName, amount);
+            if (Double.isNaN(price)) {
+                return;
+            }
+            
+            CryptoHolding holding = new CryptoHolding(selectedCrypto.id, amount);
+            recordTrade(Trade.Type.BUY, holding.coinId, amount, price);
+            addLot(holding);
+            holdingsChanged();
             fetchPrices();
             
             amountField.setText("");
-            cryptoComboBox.setSelectedIndex(0);
+            cryptoSearchField.clear();
             
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Please enter a valid number for amount.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -454,116 +458,211 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
     }
     
     private void fetchPrices() {
-        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-            @Override
-            protected Void doInBackground() {
-                try {
-                    // Build API URL with all crypto IDs
-                    StringBuilder ids = new StringBuilder();
-                    for (String id : cryptoMap.keySet()) {
-                        if (ids.length() > 0) ids.append(",");
-                        ids.append(id);
-                    }
-                    
-                    String apiUrl = "https://api.coingecko.com/api/v3/simple/price?ids=" + ids + 
-                                    "&vs_currencies=usd&include_24hr_change=true";
-                    
-                    URL url = new URL(apiUrl);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("GET");
-                    
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-                    
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    
-                    // Update holdings with prices
-                    for (CryptoHolding holding : holdings) {
-                        String id = getIdFromName(holding.name);
-                        if (jsonResponse.has(id)) {
-                            JSONObject cryptoData = jsonResponse.getJSONObject(id);
-                            holding.priceUSD = cryptoData.getDouble("usd");
-                            holding.change24h = cryptoData.optDouble("usd_24h_change", 0.0);
-                        }
-                    }
-                    
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    SwingUtilities.invokeLater(() -> {
-                        JOptionPane.showMessageDialog(CryptoPortfolioTracker.this, 
-                            "Failed to fetch prices. Please check your internet connection.", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    });
-                }
-                return null;
-            }
-            
-            @Override
-            protected void done() {
-                updateTable();
-            }
-        };
-        worker.execute();
+        fetchPrices(false);
     }
     
-    private String getIdFromName(String name) {
-        for (Map.Entry<String, String> entry : cryptoMap.entrySet()) {
-            if (entry.getValue().equals(name)) {
-                return entry.getKey();
-            }
+    // Clicks and additions are coalesced and rate limited by the scheduler
+    private void fetchPrices(boolean force) {
+        refreshScheduler.requestRefresh(force);
+    }
+    
+    /** Runs on the refresh thread and returns the number of API requests made. */
+    private int refreshPrices(boolean force) throws Exception {
+        reloadCatalog();
+        
+        // Only held coins are requested, and only those whose price expired unless forced
+        Set<String> heldIds = heldSnapshot.ids();
+        Collection<String> ids = force ? heldIds : priceCache.staleIds(heldIds);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        
+        // Batches are merged and published to the cache as one snapshot
+        PriceCache.Batch batch = priceCache.newBatch();
+        try {
+            priceProvider.fetchPrices(ids, batch);
+        } finally {
+            batch.commit();
+        }
+        return priceProvider.requestCount(ids);
+    }
+    
+    // Every lot change goes to the store, the table and the next snapshot together
+    private void addLot(CryptoHolding holding) {
+        holdingStore.add(holding);
+        tableModel.holdingAdded(holding);
+        held = held.with(holding.coinId, holding.amount, 1);
+    }
+    
+    private void updateLot(CryptoHolding holding, double amount) {
+        double previous = holding.amount;
+        holdingStore.update(holding.index, amount);
+        tableModel.holdingUpdated(holding, previous);
+        held = held.with(holding.coinId, amount - previous, 0);
+    }
+    
+    private void removeLot(CryptoHolding holding) {
+        holdingStore.remove(holding.index);
+        tableModel.holdingRemoved(holding);
+        held = held.with(holding.coinId, -holding.amount, -1);
+    }
+    
+    // Publishes the new holdings to the refresh thread, the stream and the chart
+    private void holdingsChanged() {
+        HoldingsSnapshot previous = heldSnapshot;
+        heldSnapshot = held;
+        if (priceStream != null && !held.ids().equals(previous.ids())) {
+            priceStream.subscribe(held.ids());
         }
-        return "";
+        portfolioChart.setHoldings(held.amounts);
     }
     
     private void updateTable() {
-        tableModel.setRowCount(0);
-        double totalValue = 0.0;
-        
-        for (CryptoHolding holding : holdings) {
-            double value = holding.amount * holding.priceUSD;
-            totalValue += value;
-            
-            String changeStr = String.format("%+.2f%%", holding.change24h);
-            
-            tableModel.addRow(new Object[]{
-                holding.name,
-                String.format("%.8f", holding.amount),
-                String.format("$%.2f", holding.priceUSD),
-                String.format("$%.2f", value),
-                changeStr,
-                "Actions"
-            });
+        // Only cells whose values changed are repainted
+        tableModel.refresh();
+        showTotal();
+    }
+    
+    private void showTotal() {
+        showTotalLabels();
+        portfolioChart.addValue(System.currentTimeMillis(), tableModel.totalValue());
+    }
+    
+    private void showTotalLabels() {
+        DisplayCurrency currency = exchangeRates.display();
+        totalValueLabel.setText(currency.format(tableModel.totalValue()));
+        profitLabel.setText("Unrealized " + currency.formatSigned(profitAndLoss.unrealized())
+            + "   Realized " + currency.formatSigned(profitAndLoss.realized()));
+    }
+    
+    // New rates or a new selection: repaint in the display currency, nothing is refetched
+    private void currencyChanged() {
+        DisplayCurrency currency = exchangeRates.display();
+        List<String> codes = exchangeRates.codes();
+        if (codes.size() != currencyBox.getItemCount()) {
+            updatingCurrencies = true;
+            currencyBox.setModel(new DefaultComboBoxModel<>(codes.toArray(new String[0])));
+            currencyBox.setSelectedItem(exchangeRates.selected());
+            updatingCurrencies = false;
         }
         
-        totalValueLabel.setText(String.format("$%.2f", totalValue));
+        subtitleLabel.setText("Real-time " + currency.code + " conversion");
+        TableColumnModel columns = portfolioTable.getColumnModel();
+        columns.getColumn(portfolioTable.convertColumnIndexToView(HoldingsTableModel.COL_PRICE))
+            .setHeaderValue("Price (" + currency.code + ")");
+        columns.getColumn(portfolioTable.convertColumnIndexToView(HoldingsTableModel.COL_VALUE))
+            .setHeaderValue("Value (" + currency.code + ")");
+        portfolioTable.getTableHeader().repaint();
+        
+        cellRenderer.setCurrency(currency);
+        portfolioChart.setCurrency(currency);
+        showTotalLabels();
+        portfolioTable.repaint();
+    }
+    
+    // Each change to a holding also goes into the ledger
+    private void recordTrade(Trade.Type type, String coinId, double amount, double priceUSD) {
+        Trade trade = new Trade(System.currentTimeMillis(), type, coinId, amount, priceUSD);
+        tradeLedger.append(trade);
+        profitAndLoss.add(trade);
+    }
+    
+    /**
+     * Asks what the coins cost, since that is their cost basis for good. The
+     * cached market price is only offered as a starting point, and coins that
+     * have never been priced start blank. Returns NaN if the user cancels.
+     */
+    private double askPrice(String coinId, String displayName, double amount) {
+        PriceCache.Entry entry = priceCache.get(coinId);
+        String suggestion = entry == null ? "" : String.valueOf(entry.priceUSD);
+        while (true) {
+            Object answer = JOptionPane.showInputDialog(this,
+                "Price paid per coin (USD) for " + amount + " " + displayName + ":",
+                "Cost Basis", JOptionPane.QUESTION_MESSAGE, null, null, suggestion);
+            if (answer == null) {
+                return Double.NaN;
+            }
+            try {
+                double price = Double.parseDouble(answer.toString().trim());
+                if (price >= 0 && !Double.isInfinite(price)) {
+                    return price;
+                }
+            } catch (NumberFormatException ex) {
+                // Asked again below
+            }
+            JOptionPane.showMessageDialog(this, "Please enter a valid price.", "Error", JOptionPane.ERROR_MESSAGE);
+            suggestion = answer.toString();
+        }
+    }
+    
+    // Hovering a coin row shows that coin's own cost basis and P&L
+    private String positionSummary(int row) {
+        if (tableModel.isLotRow(row)) {
+            return null;
+        }
+        Asset asset = (Asset) tableModel.getValueAt(row, HoldingsTableModel.COL_NAME);
+        List<Position.Lot> lots = profitAndLoss.lots(asset.id);
+        double cost = 0;
+        for (Position.Lot lot : lots) {
+            cost += lot.cost;
+        }
+        DisplayCurrency currency = exchangeRates.display();
+        return asset.displayName + ": cost basis " + currency.format(cost)
+            + " in " + lots.size() + (lots.size() == 1 ? " lot" : " lots")
+            + ", unrealized " + currency.formatSigned(profitAndLoss.unrealized(asset.id))
+            + ", realized " + currency.formatSigned(profitAndLoss.realized(asset.id))
+            + " (" + profitAndLoss.method() + ")";
     }
     
-    private void removeHolding(int index) {
-        if (index >= 0 && index < holdings.size()) {
-            holdings.remove(index);
-            saveHoldings();
+    // A coin row removes every lot of that coin, a lot row just that lot
+    private void removeHolding(int row) {
+        if (row >= 0 && row < tableModel.getRowCount()) {
+            CryptoHolding single = tableModel.holdingAt(row);
+            List<CryptoHolding> removed = single != null
+                ? Collections.singletonList(single)
+                : new ArrayList<>(tableModel.lotsAt(row));
+            for (CryptoHolding holding : removed) {
+                // Removing is treated as moving the coins elsewhere, not as selling them
+                recordTrade(Trade.Type.TRANSFER_OUT, holding.coinId, holding.amount, priceCache.price(holding.coinId));
+                removeLot(holding);
+            }
+            holdingsChanged();
             updateTable();
         }
     }
     
-    private void editHolding(int index) {
-        if (index >= 0 && index < holdings.size()) {
-            CryptoHolding holding = holdings.get(index);
+    // Lots are edited one at a time, so a coin row with several lots expands instead
+    private void editHolding(int row) {
+        if (row >= 0 && row < tableModel.getRowCount()) {
+            CryptoHolding holding = tableModel.holdingAt(row);
+            if (holding == null) {
+                tableModel.setExpanded(row, true);
+                return;
+            }
+            Asset asset = assetRegistry.get(holding.coinId);
+            String name = asset != null ? asset.displayName : holding.coinId;
             String newAmount = JOptionPane.showInputDialog(this, 
-                "Enter new amount for " + holding.name + ":", 
+                "Enter new amount for " + name + ":", 
                 holding.amount);
             
             if (newAmount != null && !newAmount.trim().isEmpty()) {
                 try {
                     double amount = Double.parseDouble(newAmount);
                     if (amount > 0) {
-                        holding.amount = amount;
-                        saveHoldings();
+                        // A corrected amount is an adjustment, not a trade: nothing is bought or sold
+                        double difference = amount - holding.amount;
+                        if (difference > 0) {
+                            double price = askPrice(holding.coinId, name, difference);
+                            if (Double.isNaN(price)) {
+                                return;
+                            }
+                            recordTrade(Trade.Type.TRANSFER_IN, holding.coinId, difference, price);
+                        } else if (difference < 0) {
+                            recordTrade(Trade.Type.TRANSFER_OUT, holding.coinId, -difference,
+                                priceCache.price(holding.coinId));
+                        }
+                        updateLot(holding, amount);
+                        holdingsChanged();
                         updateTable();
                     }
                 } catch (NumberFormatException ex) {
@@ -573,46 +672,258 @@ public class CryptoPortfolioTracker extends JFrame  implements ButtonEditor.Acti
         }
     }
     
-    private void saveHoldings() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("portfolio.dat"))) {
-            oos.writeObject(holdings);
+    // Every published price is also appended to the local history, opened off the startup path
+    private void startHistory() {
+        priceHistory = new PriceHistory(new File(PriceHistory.DIR_NAME), priceCache);
+        IoExecutor.shared().execute(() -> {
+            try {
+                priceHistory.start();
+                priceCache.addListener(priceHistory);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+    
+    // The table and the snapshot both start from the store's per-coin totals, not the lots
+    private void loadHoldings() {
+        try {
+            holdingStore.load();
         } catch (IOException ex) {
             ex.printStackTrace();
         }
+        tableModel = new HoldingsTableModel(holdingStore, priceCache, assetRegistry);
+        held = holdingStore.totals();
+        heldSnapshot = held;
     }
     
-    @SuppressWarnings("unchecked")
-    private void loadHoldings() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("portfolio.dat"))) {
-            holdings = (ArrayList<CryptoHolding>) ois.readObject();
-        } catch (FileNotFoundException ex) {
-            holdings = new ArrayList<>();
-        } catch (IOException | ClassNotFoundException ex) {
+    // Reads the file on the I/O executor behind a progress dialog; nothing is stored until it finishes
+    private void importTrades() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import trade history (CSV)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        TradeCsvImport csvImport = new TradeCsvImport(assetRegistry, tradeLedger::contains);
+        
+        JProgressBar progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            csvImport.cancel();
+            cancelButton.setEnabled(false);
+        });
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 10));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        progressPanel.add(new JLabel("Importing " + file.getName() + "..."), BorderLayout.NORTH);
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.EAST);
+        JDialog dialog = new JDialog(this, "Import", false);
+        dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        dialog.add(progressPanel);
+        dialog.setSize(420, 130);
+        dialog.setLocationRelativeTo(this);
+        
+        // The dialog polls the reader instead of being told about every row
+        javax.swing.Timer poll = new javax.swing.Timer(100,
+            e -> progressBar.setValue((int) (csvImport.progress() * 1000)));
+        poll.start();
+        dialog.setVisible(true);
+        
+        IoExecutor.shared().execute(() -> {
+            TradeCsvImport.Result result = null;
+            IOException failure = null;
+            try {
+                result = csvImport.read(file);
+            } catch (IOException ex) {
+                failure = ex;
+            }
+            TradeCsvImport.Result finished = result;
+            IOException failed = failure;
+            SwingUtilities.invokeLater(() -> {
+                poll.stop();
+                dialog.dispose();
+                if (failed != null) {
+                    failed.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "Could not import " + file.getName() + ":\n"
+                        + failed.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                } else if (!finished.cancelled) {
+                    applyImport(finished);
+                }
+            });
+        });
+    }
+    
+    // One ledger batch, one holdings change per coin and one refresh for the whole file
+    private void applyImport(TradeCsvImport.Result result) {
+        Map<String, Double> shortfalls = new LinkedHashMap<>();
+        if (!result.trades.isEmpty()) {
+            tradeLedger.appendAll(result.trades);
+            profitAndLoss.addAll(result.trades);
+            
+            Map<String, Double> changes = new LinkedHashMap<>();
+            for (Trade trade : result.trades) {
+                boolean incoming = trade.type == Trade.Type.BUY || trade.type == Trade.Type.TRANSFER_IN;
+                changes.merge(trade.coinId, incoming ? trade.amount : -trade.amount, Double::sum);
+            }
+            for (Map.Entry<String, Double> change : changes.entrySet()) {
+                double shortfall = applyHoldingChange(change.getKey(), change.getValue());
+                if (shortfall > 0) {
+                    shortfalls.put(change.getKey(), shortfall);
+                }
+            }
+            holdingsChanged();
+            updateTable();
+            fetchPrices();
+        }
+        
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Imported %d of %d rows.%n%d duplicates and %d invalid rows were skipped.",
+            result.trades.size(), result.rows, result.duplicates, result.invalid));
+        for (Map.Entry<String, Double> shortfall : shortfalls.entrySet()) {
+            Asset asset = assetRegistry.get(shortfall.getKey());
+            summary.append(String.format("%n%s: %s more sent out than held, holdings stop at zero.",
+                asset != null ? asset.displayName : shortfall.getKey(), shortfall.getValue()));
+        }
+        for (String error : result.errors) {
+            summary.append('\n').append(error);
+        }
+        if (result.invalid > result.errors.size()) {
+            summary.append("\n...");
+        }
+        JOptionPane.showMessageDialog(this, summary.toString(), "Import", JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    /**
+     * Incoming coins go to the first lot of that coin, or a new one. Outgoing
+     * coins are taken from the newest lot back, emptying lots as needed.
+     * Returns the amount the lots could not cover.
+     */
+    private double applyHoldingChange(String coinId, double change) {
+        List<CryptoHolding> lots = holdingStore.lotsOf(coinId);
+        if (change > 0) {
+            if (lots.isEmpty()) {
+                addLot(new CryptoHolding(coinId, change));
+            } else {
+                updateLot(lots.get(0), lots.get(0).amount + change);
+            }
+            return 0;
+        }
+        
+        double remaining = -change;
+        for (int i = lots.size() - 1; i >= 0 && remaining > 0; i--) {
+            CryptoHolding holding = lots.get(i);
+            if (holding.amount > remaining) {
+                updateLot(holding, holding.amount - remaining);
+                remaining = 0;
+            } else {
+                remaining -= holding.amount;
+                removeLot(holding);
+            }
+        }
+        return remaining;
+    }
+    
+    private void loadLedger() {
+        profitAndLoss = ProfitAndLoss.fromSystemProperties(priceCache);
+        tradeLedger = new TradeLedger();
+        try {
+            profitAndLoss.addAll(tradeLedger.load());
+        } catch (IOException ex) {
             ex.printStackTrace();
-            holdings = new ArrayList<>();
         }
     }
     
     private void startAutoRefresh() {
-        refreshTimer = new Timer(60000, e -> fetchPrices()); // Refresh every 60 seconds
-        refreshTimer.start();
+        // P&L first, so the pipeline's flush already sees it
+        priceCache.addListener(profitAndLoss);
+        
+        // Changed prices reach the table at a fixed frame rate, however often they arrive
+        pricePipeline = PriceUpdatePipeline.fromSystemProperties(tableModel, this::showTotal);
+        priceCache.addListener(pricePipeline);
+        
+        refreshScheduler = RefreshScheduler.fromSystemProperties(this::refreshPrices,
+            new RefreshScheduler.Listener() {
+                @Override
+                public void refreshed() {
+                    // New prices reach the table through the pipeline
+                }
+                
+                @Override
+                public void refreshFailed(Exception ex, int consecutiveFailures, long retryMillis) {
+                    ex.printStackTrace();
+                    if (consecutiveFailures == 1) { // Retries back off quietly
+                        SwingUtilities.invokeLater(() -> {
+                            JOptionPane.showMessageDialog(CryptoPortfolioTracker.this, 
+                                "Failed to fetch prices. Please check your internet connection.", 
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                        });
+                    }
+                }
+            });
+        refreshScheduler.start();
+        exchangeRates.start();
+        
+        // Background refreshes end with the window, before the JVM exits
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                stopAutoRefresh();
+            }
+        });
+        
+        // Live ticks on top of polling; the poller skips coins the stream keeps fresh
+        priceStream = PriceStream.fromSystemProperties(priceCache);
+        if (priceStream != null) {
+            priceStream.subscribe(heldSnapshot.ids());
+            priceStream.start();
+        }
+    }
+    
+    private void stopAutoRefresh() {
+        refreshScheduler.stop();
+        pricePipeline.stop();
+        exchangeRates.stop();
+        if (priceStream != null) {
+            priceStream.close();
+        }
+    }
+    
+    // Picks up edits to the catalog file without a restart
+    private void reloadCatalog() {
+        try {
+            if (assetRegistry.reloadIfChanged()) {
+                SwingUtilities.invokeLater(() -> {
+                    iconCache.clear();
+                    tableModel.namesChanged();
+                    portfolioTable.repaint();
+                });
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
     }
 
     @Override
-    public void editCrypto() {
-        editHolding(buttonEditor.getCurrentRow());
+    public void editCrypto(int row) {
+        editHolding(portfolioTable.convertRowIndexToModel(row));
     }
 
     @Override
-    public void removeCrypto() {
+    public void removeCrypto(int viewRow) {
+        int row = portfolioTable.convertRowIndexToModel(viewRow);
+        int lots = tableModel.isLotRow(row) ? 1 : tableModel.lotCount(row);
         int confirm = JOptionPane.showConfirmDialog(
             CryptoPortfolioTracker.this,
-            "Are you sure you want to remove this cryptocurrency?",
+            lots > 1
+                ? "Are you sure you want to remove all " + lots + " lots of this cryptocurrency?"
+                : "Are you sure you want to remove this cryptocurrency?",
             "Confirm Removal",
             JOptionPane.YES_NO_OPTION
         );
         if (confirm == JOptionPane.YES_OPTION) {
-            removeHolding(buttonEditor.getCurrentRow());
+            removeHolding(row);
         }
     }
         
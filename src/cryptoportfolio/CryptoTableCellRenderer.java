@@ -7,67 +7,232 @@ package cryptoportfolio;
 
 import java.awt.Color;
 import java.awt.Component;
-import java.awt.FlowLayout;
-import java.awt.Font;
-import java.util.Map;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.Locale;
+import java.util.function.Function;
+import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
+import javax.swing.JComponent;
 import javax.swing.JLabel;
-import javax.swing.JPanel;
 import javax.swing.JTable;
-import javax.swing.SwingConstants;
 import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableCellRenderer;
 
 /**
  *
  * @author Ba Thanh Danh Phan
  */
     // Custom cell renderer with crypto images
-class CryptoTableCellRenderer extends DefaultTableCellRenderer {
+class CryptoTableCellRenderer implements TableCellRenderer {
     
-    private Map<String, ImageIcon> imageCache;
+    /**
+     * {@code lightweight} (default) paints the name cell and the Actions
+     * column directly; {@code classic} uses a JLabel and real buttons.
+     */
+    static final String RENDERING_PROPERTY = "cryptoportfolio.rendering";
     
-    public CryptoTableCellRenderer(Map<String, ImageIcon> imageCache){
-        this.imageCache = imageCache;
+    private Function<Asset, ImageIcon> iconLookup;
+    private final boolean lightweight;
+    private DisplayCurrency currency = DisplayCurrency.USD;
+    
+    // One component per cell kind, reused for every paint
+    private final JLabel nameCell = new JLabel();
+    private final NameCell paintedNameCell = new NameCell();
+    private final NumberCell numberCell = new NumberCell();
+    private final DefaultTableCellRenderer otherCell = new DefaultTableCellRenderer();
+    
+    public CryptoTableCellRenderer(Function<Asset, ImageIcon> iconLookup){
+        this(iconLookup, false);
+    }
+    
+    CryptoTableCellRenderer(Function<Asset, ImageIcon> iconLookup, boolean lightweight) {
+        this.iconLookup = iconLookup;
+        this.lightweight = lightweight;
+        nameCell.setOpaque(true);
+        nameCell.setFont(Theme.CELL_FONT);
+        nameCell.setForeground(Theme.TEXT);
+        nameCell.setIconTextGap(10);
+        nameCell.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+    }
+    
+    static CryptoTableCellRenderer fromSystemProperties(Function<Asset, ImageIcon> iconLookup) {
+        String mode = System.getProperty(RENDERING_PROPERTY, "lightweight").trim().toLowerCase(Locale.ROOT);
+        if (!mode.equals("lightweight") && !mode.equals("classic")) {
+            System.err.println("Unknown rendering mode " + mode + ", using lightweight");
+        }
+        return new CryptoTableCellRenderer(iconLookup, !mode.equals("classic"));
+    }
+    
+    /** Currency for the price and value columns; the model keeps USD. */
+    void setCurrency(DisplayCurrency currency) {
+        this.currency = currency;
+    }
+    
+    /** Whether the Actions column should be painted by {@link ActionsCell} rather than buttons. */
+    boolean isLightweight() {
+        return lightweight;
     }
     
     @Override
     public Component getTableCellRendererComponent(JTable table, Object value, 
             boolean isSelected, boolean hasFocus, int row, int column) {
 
-        Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-
-        setBackground(isSelected ? new Color(51, 65, 85) : new Color(30, 41, 59));
-        setForeground(Color.WHITE);
-
-        if (column == 0) { // Cryptocurrency column with image
-            String cryptoName = (String) value;
-            JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
-            panel.setBackground(getBackground());
-
-            // Get crypto image
-            ImageIcon icon = imageCache.get(cryptoName);
-            JLabel iconLabel = new JLabel(icon);
-
-            JLabel nameLabel = new JLabel(cryptoName);
-            nameLabel.setForeground(Color.WHITE);
-            nameLabel.setFont(new Font("Arial", Font.PLAIN, 13));
+        Color background = isSelected ? Theme.SELECTION : Theme.BACKGROUND;
+        int modelColumn = table.convertColumnIndexToModel(column);
 
-            panel.add(iconLabel);
-            panel.add(nameLabel);
-
-            return panel;
-        } else if (column == 4) { // 24h Change column
-            String changeStr = (String) value;
-            if (changeStr.startsWith("+")) {
-                setForeground(new Color(74, 222, 128)); // Green
-            } else if (changeStr.startsWith("-")) {
-                setForeground(new Color(248, 113, 113)); // Red
+        if (modelColumn == HoldingsTableModel.COL_NAME && lightweight) {
+            Asset asset = (Asset) value;
+            paintedNameCell.background = background;
+            if (table.getModel() instanceof HoldingsTableModel) {
+                HoldingsTableModel model = (HoldingsTableModel) table.getModel();
+                int modelRow = table.convertRowIndexToModel(row);
+                paintedNameCell.icon = model.isLotRow(modelRow) ? null : iconLookup.apply(asset);
+                paintedNameCell.text = model.nameAt(modelRow);
+            } else {
+                paintedNameCell.icon = iconLookup.apply(asset);
+                paintedNameCell.text = asset.displayName;
+            }
+            return paintedNameCell;
+        }
+        if (modelColumn == HoldingsTableModel.COL_NAME) { // Cryptocurrency column with image
+            Asset asset = (Asset) value;
+            nameCell.setBackground(background);
+            if (table.getModel() instanceof HoldingsTableModel) {
+                // Coin rows show the lot count, lot rows just their number
+                HoldingsTableModel model = (HoldingsTableModel) table.getModel();
+                int modelRow = table.convertRowIndexToModel(row);
+                nameCell.setIcon(model.isLotRow(modelRow) ? null : iconLookup.apply(asset));
+                nameCell.setText(model.nameAt(modelRow));
+            } else {
+                nameCell.setIcon(iconLookup.apply(asset));
+                nameCell.setText(asset.displayName);
             }
-            setHorizontalAlignment(SwingConstants.RIGHT);
-        } else if (column >= 1 && column <= 3) {
-            setHorizontalAlignment(SwingConstants.RIGHT);
+            return nameCell;
+        }
+        if (modelColumn >= HoldingsTableModel.COL_AMOUNT && modelColumn <= HoldingsTableModel.COL_CHANGE) {
+            double number = table.getModel() instanceof HoldingsTableModel
+                    ? ((HoldingsTableModel) table.getModel()).numberAt(table.convertRowIndexToModel(row), modelColumn)
+                    : ((Number) value).doubleValue();
+            CellText text = numberCell.text.clear();
+            Color foreground = Theme.TEXT;
+            switch (modelColumn) {
+                case HoldingsTableModel.COL_AMOUNT:
+                    text.appendFixed(number, 8);
+                    break;
+                case HoldingsTableModel.COL_CHANGE: // 24h Change column
+                    // Signed by the raw value, so a tiny loss still shows as red -0.00%
+                    if (number >= 0) {
+                        text.append('+');
+                        foreground = Theme.GAIN; // Green
+                    } else {
+                        text.append('-');
+                        foreground = Theme.LOSS; // Red
+                    }
+                    text.appendFixed(Math.abs(number), 2).append('%');
+                    break;
+                default:
+                    currency.append(text, number);
+                    break;
+            }
+            numberCell.background = background;
+            numberCell.foreground = foreground;
+            return numberCell;
         }
 
-        return c;
+        otherCell.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+        otherCell.setBackground(background);
+        otherCell.setForeground(Theme.TEXT);
+        return otherCell;
+    }
+    
+    /** Icon and name painted directly, laid out like the classic JLabel. */
+    private static final class NameCell extends JComponent {
+        private static final int PADDING = 10;
+        private static final int ICON_GAP = 10;
+        
+        ImageIcon icon;
+        String text = "";
+        Color background;
+        
+        NameCell() {
+            setFont(Theme.CELL_FONT);
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(background);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            
+            int x = PADDING;
+            if (icon != null) {
+                icon.paintIcon(this, g, x, (getHeight() - icon.getIconHeight()) / 2);
+                x += icon.getIconWidth() + ICON_GAP;
+            }
+            FontMetrics metrics = g.getFontMetrics(Theme.CELL_FONT);
+            int y = (getHeight() - metrics.getHeight()) / 2 + metrics.getAscent();
+            g.setFont(Theme.CELL_FONT);
+            g.setColor(Theme.TEXT);
+            g.drawString(text, x, y);
+        }
+        
+        @Override
+        public void invalidate() {
+        }
+        
+        @Override
+        public void validate() {
+        }
+        
+        @Override
+        public void revalidate() {
+        }
+        
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+        }
+    }
+    
+    /** Right-aligned number painted straight from a char buffer. */
+    private static final class NumberCell extends JComponent {
+        private static final int PADDING = 5;
+        
+        final CellText text = new CellText();
+        Color background;
+        Color foreground;
+        
+        NumberCell() {
+            setFont(Theme.CELL_FONT);
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(background);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            
+            FontMetrics metrics = g.getFontMetrics(Theme.CELL_FONT);
+            int x = getWidth() - PADDING - metrics.charsWidth(text.chars, 0, text.length);
+            int y = (getHeight() - metrics.getHeight()) / 2 + metrics.getAscent();
+            g.setFont(Theme.CELL_FONT);
+            g.setColor(foreground);
+            g.drawChars(text.chars, 0, text.length, x, y);
+        }
+        
+        // Renderer components are only stamped, so skip the usual bookkeeping
+        @Override
+        public void invalidate() {
+        }
+        
+        @Override
+        public void validate() {
+        }
+        
+        @Override
+        public void revalidate() {
+        }
+        
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+/**
+ * How USD amounts are shown in one currency: the factor to multiply by,
+ * the symbol and the number of decimals. Prices stay in USD everywhere
+ * else; converting is one multiply when a value is painted.
+ *
+ * One-character symbols such as the dollar or euro sign go before the
+ * number, longer ones such as {@code BTC} or {@code CHF} after it.
+ * Immutable; {@link ExchangeRates} makes a new one when the rates or the
+ * selected currency change.
+ */
+final class DisplayCurrency {
+
+    static final DisplayCurrency USD = new DisplayCurrency("USD", "$", 2, 1.0);
+
+    /** Upper-case code, such as {@code EUR}. */
+    final String code;
+    final String unit;
+    final int decimals;
+    /** Units of this currency per US dollar. */
+    final double perUsd;
+    private final boolean prefix;
+
+    DisplayCurrency(String code, String unit, int decimals, double perUsd) {
+        this.code = code;
+        this.unit = unit;
+        this.decimals = Math.max(0, Math.min(8, decimals));
+        this.perUsd = perUsd;
+        this.prefix = unit.length() == 1;
+    }
+
+    /** Appends a USD amount converted and formatted in this currency. */
+    CellText append(CellText text, double usd) {
+        double value = usd * perUsd;
+        if (value < 0) {
+            text.append('-');
+        }
+        return appendMagnitude(text, Math.abs(value));
+    }
+
+    String format(double usd) {
+        return append(new CellText(), usd).toString();
+    }
+
+    /** Like {@link #format} but always with a sign, for gains and losses. */
+    String formatSigned(double usd) {
+        double value = usd * perUsd;
+        CellText text = new CellText().append(value < 0 ? '-' : '+');
+        return appendMagnitude(text, Math.abs(value)).toString();
+    }
+
+    private CellText appendMagnitude(CellText text, double value) {
+        if (prefix) {
+            text.append(unit.charAt(0)).appendFixed(value, decimals);
+        } else {
+            text.appendFixed(value, decimals).append(' ');
+            for (int i = 0; i < unit.length(); i++) {
+                text.append(unit.charAt(i));
+            }
+        }
+        return text;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Coalescing hand-off of background results to the EDT.
+ *
+ * Any thread may call {@link #post()} as often as it likes; the update runs
+ * on the EDT at most once per frame and always after the latest post, so it
+ * should read the current state rather than carry its own.
+ */
+final class EdtHandoff {
+
+    private final Runnable update;
+    private final long frameMillis;
+    private final LongSupplier clock;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final Timer delay;
+    private long lastRun; // EDT only
+
+    EdtHandoff(Runnable update, int framesPerSecond) {
+        this(update, framesPerSecond, System::currentTimeMillis);
+    }
+
+    /** @param clock millisecond time that frames are measured against; tests pass a fixed one */
+    EdtHandoff(Runnable update, int framesPerSecond, LongSupplier clock) {
+        this.update = update;
+        this.frameMillis = 1000L / Math.max(1, framesPerSecond);
+        this.clock = clock;
+        this.delay = new Timer(0, e -> dispatch());
+        this.delay.setRepeats(false);
+    }
+
+    void post() {
+        if (pending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        long wait = lastRun + frameMillis - clock.getAsLong();
+        if (wait > 0) {
+            delay.setInitialDelay((int) wait);
+            delay.restart();
+            return;
+        }
+        // Cleared first so a post during the update schedules another one
+        pending.set(false);
+        lastRun = clock.getAsLong();
+        update.run();
+    }
+}
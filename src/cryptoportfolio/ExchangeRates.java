@@ -0,0 +1,170 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.swing.SwingUtilities;
+
+/**
+ * Cached exchange rates for showing values in a currency other than USD.
+ *
+ * Coin prices are always fetched in USD. The rate table comes from the
+ * CoinGecko {@code exchange_rates} endpoint, which quotes every fiat, crypto
+ * and commodity currency against BTC, and is refreshed through the shared
+ * {@link HttpFetcher} on its own {@link RefreshScheduler}, every
+ * {@code cryptoportfolio.fxRefreshMinutes} minutes (default 10). Picking
+ * another currency only swaps the {@link DisplayCurrency} that renderers
+ * multiply by, so nothing is fetched again.
+ *
+ * The starting currency comes from {@code cryptoportfolio.currency}
+ * (default {@code usd}). Until the first table arrives, and for codes the
+ * table does not know, values stay in USD. Everything but the fetch runs
+ * on the EDT.
+ */
+class ExchangeRates {
+
+    static final String CURRENCY_PROPERTY = "cryptoportfolio.currency";
+    static final String INTERVAL_PROPERTY = "cryptoportfolio.fxRefreshMinutes";
+
+    private static final int DEFAULT_INTERVAL_MINUTES = 10;
+    private static final String API_URL = "https://api.coingecko.com/api/v3/exchange_rates";
+
+    /** One currency of the table. */
+    private static final class Rate {
+        final String unit;
+        final String type;
+        final double perBtc;
+
+        Rate(String unit, String type, double perBtc) {
+            this.unit = unit;
+            this.type = type;
+            this.perBtc = perBtc;
+        }
+    }
+
+    private static final HttpFetcher.BodyParser<Map<String, Rate>> PARSER = body -> {
+        Map<String, Rate> rates = new LinkedHashMap<>();
+        PriceJsonParser.parseRates(body, (code, unit, type, perBtc) ->
+                rates.put(code.toLowerCase(Locale.ROOT), new Rate(unit, type, perBtc)));
+        return Collections.unmodifiableMap(rates);
+    };
+
+    private final HttpFetcher http;
+    private final Runnable onChange;
+    private final RefreshScheduler scheduler;
+
+    // EDT only
+    private Map<String, Rate> rates = Collections.emptyMap();
+    private String selected;
+    private DisplayCurrency display = DisplayCurrency.USD;
+
+    /**
+     * @param onChange runs on the EDT whenever {@link #display()} may have
+     *                 changed, after a new table or a new selection
+     */
+    ExchangeRates(HttpFetcher http, long intervalMillis, String selected, Runnable onChange) {
+        this.http = http;
+        this.onChange = onChange;
+        this.selected = selected.trim().toLowerCase(Locale.ROOT);
+        this.scheduler = new RefreshScheduler(force -> fetch(), new RefreshScheduler.Listener() {
+            @Override
+            public void refreshed() {
+            }
+
+            @Override
+            public void refreshFailed(Exception ex, int consecutiveFailures, long retryMillis) {
+                // Keep showing the last rates; the scheduler backs off
+                System.err.println("Exchange rate refresh failed (" + consecutiveFailures + "): " + ex);
+            }
+        }, intervalMillis, 1, 1, "fx-refresh");
+    }
+
+    static ExchangeRates fromSystemProperties(Runnable onChange) {
+        int minutes = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL_MINUTES);
+        String currency = System.getProperty(CURRENCY_PROPERTY, "usd");
+        return new ExchangeRates(HttpFetcher.SHARED, Math.max(1, minutes) * 60_000L, currency, onChange);
+    }
+
+    void start() {
+        scheduler.start();
+    }
+
+    void stop() {
+        scheduler.stop();
+    }
+
+    /** The currency values are shown in right now. */
+    DisplayCurrency display() {
+        return display;
+    }
+
+    /** Upper-case codes that can be selected: USD first, then the table's order. */
+    List<String> codes() {
+        List<String> codes = new ArrayList<>(rates.size() + 1);
+        codes.add(DisplayCurrency.USD.code);
+        for (String code : rates.keySet()) {
+            if (!code.equals("usd")) {
+                codes.add(code.toUpperCase(Locale.ROOT));
+            }
+        }
+        return codes;
+    }
+
+    /** Upper-case code of the chosen currency, even while its rate is still unknown. */
+    String selected() {
+        return selected.toUpperCase(Locale.ROOT);
+    }
+
+    /** Shows values in another currency, using the rates already cached. */
+    void select(String code) {
+        selected = code.trim().toLowerCase(Locale.ROOT);
+        update();
+    }
+
+    private int fetch() throws IOException {
+        Map<String, Rate> fetched = http.get(API_URL, PARSER);
+        SwingUtilities.invokeLater(() -> {
+            rates = fetched;
+            update();
+        });
+        return 1;
+    }
+
+    private void update() {
+        Rate rate = rates.get(selected);
+        Rate usd = rates.get("usd");
+        if (rate == null || usd == null || selected.equals("usd")) {
+            display = DisplayCurrency.USD;
+        } else {
+            display = new DisplayCurrency(selected.toUpperCase(Locale.ROOT), rate.unit,
+                    decimals(selected, rate.type), rate.perBtc / usd.perBtc);
+        }
+        onChange.run();
+    }
+
+    /** ISO minor units for fiat, so VND and JPY show none; more for coins and metals. */
+    private static int decimals(String code, String type) {
+        if (type.equals("crypto")) {
+            return 8;
+        }
+        if (type.equals("commodity")) {
+            return 4;
+        }
+        try {
+            int digits = Currency.getInstance(code.toUpperCase(Locale.ROOT)).getDefaultFractionDigits();
+            return digits < 0 ? 2 : digits;
+        } catch (IllegalArgumentException ex) {
+            return 2;
+        }
+    }
+}
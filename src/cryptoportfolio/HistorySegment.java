@@ -0,0 +1,158 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Columnar file holding every coin's prices for one time window of one
+ * resolution.
+ *
+ * Layout: {@code [magic:int][version:short][resolution:long][start:long][coins:int]}
+ * followed by one block per coin:
+ * {@code [id:utf][count:int][length:int][firstTime:long][deltas:varint...][prices:double...]}.
+ * Timestamps are multiples of the resolution and stored as varint deltas in
+ * resolution units, so a regular series costs one byte per timestamp. The
+ * block length lets a reader skip coins it was not asked for.
+ */
+final class HistorySegment {
+
+    private static final int MAGIC = 0x43504853; // "CPHS"
+    private static final short VERSION = 1;
+
+    private HistorySegment() {
+    }
+
+    /**
+     * Reads the series of the given coins, or of every coin if {@code ids}
+     * is null. Missing files read as empty.
+     */
+    static Map<String, PriceSeries> read(File file, Collection<String> ids) throws IOException {
+        Map<String, PriceSeries> series = new HashMap<>();
+        if (!file.exists()) {
+            return series;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a history segment: " + file);
+            }
+            long resolution = in.readLong();
+            in.readLong(); // Window start, implied by the file name
+            int coins = in.readInt();
+            for (int c = 0; c < coins; c++) {
+                String id = in.readUTF();
+                int count = in.readInt();
+                int length = in.readInt();
+                if (ids != null && !ids.contains(id)) {
+                    skipFully(in, length);
+                    continue;
+                }
+                PriceSeries points = new PriceSeries(count);
+                long time = in.readLong();
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        time += readVarLong(in) * resolution;
+                    }
+                    points.times[i] = time;
+                }
+                for (int i = 0; i < count; i++) {
+                    points.prices[i] = in.readDouble();
+                }
+                points.size = count;
+                series.put(id, points);
+            }
+        }
+        return series;
+    }
+
+    /** Replaces the file atomically with the given series. */
+    static void write(File file, long resolution, long start, Map<String, PriceSeries> series) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(resolution);
+        out.writeLong(start);
+
+        Map<String, PriceSeries> sorted = new TreeMap<>(series);
+        sorted.values().removeIf(points -> points.size == 0);
+        out.writeInt(sorted.size());
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream blockOut = new DataOutputStream(block);
+        for (Map.Entry<String, PriceSeries> entry : sorted.entrySet()) {
+            PriceSeries points = entry.getValue();
+            block.reset();
+            blockOut.writeLong(points.times[0]);
+            for (int i = 1; i < points.size; i++) {
+                writeVarLong(blockOut, (points.times[i] - points.times[i - 1]) / resolution);
+            }
+            for (int i = 0; i < points.size; i++) {
+                blockOut.writeDouble(points.prices[i]);
+            }
+            blockOut.flush();
+            out.writeUTF(entry.getKey());
+            out.writeInt(points.size);
+            out.writeInt(block.size());
+            block.writeTo(out);
+        }
+        out.flush();
+
+        Files.createDirectories(file.getParentFile().toPath());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int step = in.skipBytes(length - skipped);
+            if (step <= 0) {
+                throw new EOFException();
+            }
+            skipped += step;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
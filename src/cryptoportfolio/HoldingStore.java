@@ -0,0 +1,50 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Persistent storage for holdings. The list returned by {@link #load()} is
+ * live: it must only be modified through the store so that every change is
+ * persisted. The store keeps each holding's {@code index} equal to its
+ * position in that list.
+ */
+interface HoldingStore {
+
+    /** System property selecting the storage mode: {@code log} or {@code mapped}. */
+    String STORAGE_PROPERTY = "cryptoportfolio.storage";
+
+    List<CryptoHolding> load() throws IOException;
+
+    void add(CryptoHolding holding);
+
+    void update(int index, double amount);
+
+    void remove(int index);
+
+    /**
+     * Amount and lot count per coin of the loaded holdings, kept current by
+     * add, update and remove, without decoding every holding where the
+     * store can avoid it.
+     */
+    HoldingsSnapshot totals();
+
+    /** The holdings of one coin, in list order. May read every record. */
+    List<CryptoHolding> lotsOf(String coinId);
+
+    /** Flushes pending writes. Safe to call more than once. */
+    void close();
+
+    static HoldingStore fromSystemProperties(AssetRegistry registry) {
+        String mode = System.getProperty(STORAGE_PROPERTY, "log");
+        if ("mapped".equalsIgnoreCase(mode)) {
+            return new MappedHoldingStore(registry);
+        }
+        return new LogHoldingStore(registry);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable summary of the holdings: how much of each coin is held.
+ *
+ * The live holdings list belongs to the EDT. After every change the EDT
+ * publishes a new snapshot through a volatile field, and the refresh
+ * thread, price stream and chart read that instead of the list, so they
+ * never block on the EDT or see a list mid-change.
+ *
+ * A change to one lot derives the next snapshot from the previous one in
+ * time proportional to the number of coins, never the number of lots.
+ */
+final class HoldingsSnapshot {
+
+    static final HoldingsSnapshot EMPTY = new HoldingsSnapshot(Collections.emptyMap(), Collections.emptyMap());
+
+    /** Total amount per coin id, in the order the coins were first added. */
+    final Map<String, Double> amounts;
+    // Lots per coin id, so a coin leaves with its last lot however its total rounds
+    private final Map<String, Integer> lots;
+
+    private HoldingsSnapshot(Map<String, Double> amounts, Map<String, Integer> lots) {
+        this.amounts = Collections.unmodifiableMap(amounts);
+        this.lots = lots;
+    }
+
+    /**
+     * A copy with {@code delta} added to the coin's total and {@code lotDelta}
+     * lots added (1), removed (-1) or left alone (0).
+     */
+    HoldingsSnapshot with(String coinId, double delta, int lotDelta) {
+        Map<String, Double> nextAmounts = new LinkedHashMap<>(amounts);
+        Map<String, Integer> nextLots = new LinkedHashMap<>(lots);
+        int count = nextLots.getOrDefault(coinId, 0) + lotDelta;
+        if (count > 0) {
+            nextAmounts.merge(coinId, delta, Double::sum);
+            nextLots.put(coinId, count);
+        } else {
+            nextAmounts.remove(coinId);
+            nextLots.remove(coinId);
+        }
+        return new HoldingsSnapshot(nextAmounts, nextLots);
+    }
+
+    /** Wraps per-coin totals and lot counts that were already summed. The maps are kept, not copied. */
+    static HoldingsSnapshot of(Map<String, Double> amounts, Map<String, Integer> lots) {
+        return new HoldingsSnapshot(amounts, lots);
+    }
+
+    /** Lots held of the coin, 0 if none. */
+    int lotCount(String coinId) {
+        return lots.getOrDefault(coinId, 0);
+    }
+
+    Set<String> ids() {
+        return amounts.keySet();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.TableModelEvent;
+
+/**
+ * Table of holdings whose selection follows the coins and lots rather than
+ * the row numbers.
+ *
+ * The model moves coins between rows as prices change, reporting it as row
+ * updates or a full data change, and a plain JTable would then leave the
+ * same row numbers selected with other coins on them. The selection is
+ * remembered by {@link HoldingsTableModel#rowKey(int)} whenever the user
+ * changes it and put back on those keys after every model event that can
+ * move rows.
+ */
+class HoldingsTable extends JTable {
+
+    private List<Object> selectedKeys; // Null until the constructor is done
+    private boolean restoring;
+
+    HoldingsTable(HoldingsTableModel model) {
+        super(model);
+        selectedKeys = new ArrayList<>();
+        getSelectionModel().addListSelectionListener(e -> {
+            if (!restoring) {
+                rememberSelection();
+            }
+        });
+    }
+
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        // Single cell updates never move rows, and they arrive for every price tick
+        boolean movesRows = e.getType() != TableModelEvent.UPDATE || e.getColumn() == TableModelEvent.ALL_COLUMNS;
+        if (selectedKeys == null || selectedKeys.isEmpty() || !movesRows) {
+            super.tableChanged(e);
+            return;
+        }
+        restoring = true;
+        try {
+            super.tableChanged(e);
+            restoreSelection();
+        } finally {
+            restoring = false;
+        }
+    }
+
+    private void rememberSelection() {
+        HoldingsTableModel model = (HoldingsTableModel) getModel();
+        selectedKeys.clear();
+        for (int row : getSelectedRows()) {
+            if (row < model.getRowCount()) {
+                selectedKeys.add(model.rowKey(row));
+            }
+        }
+    }
+
+    // Keys whose rows are hidden by the filter or collapsed stay remembered for later
+    private void restoreSelection() {
+        HoldingsTableModel model = (HoldingsTableModel) getModel();
+        int[] rows = new int[selectedKeys.size()];
+        int found = 0;
+        boolean unchanged = true;
+        for (Object key : selectedKeys) {
+            int row = model.rowOf(key);
+            if (row >= 0) {
+                rows[found++] = row;
+                unchanged &= isRowSelected(row);
+            }
+        }
+        if (unchanged && found == getSelectedRowCount()) {
+            return;
+        }
+        ListSelectionModel selection = getSelectionModel();
+        selection.setValueIsAdjusting(true);
+        selection.clearSelection();
+        for (int i = 0; i < found; i++) {
+            selection.addSelectionInterval(rows[i], rows[i]);
+        }
+        selection.setValueIsAdjusting(false);
+    }
+}
@@ -0,0 +1,871 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model with one row per coin, aggregating every holding (lot) of
+ * that coin, with prices read from the shared {@link PriceCache}. Cells
+ * hold raw numbers; formatting is left to the renderer.
+ *
+ * Each coin keeps its quantity as a running sum and the portfolio total is
+ * one too, so adding, editing or removing a lot and repricing a coin are
+ * constant time, and the table has as many rows as there are coins rather
+ * than lots. The coins start from the store's per-coin totals, and a
+ * coin's lots are only read from the store when it is expanded or one of
+ * them is edited, so building the model does not depend on the number of
+ * lots. A coin with several lots can be expanded to list them in extra
+ * rows below it; collapsed lots are never rendered.
+ *
+ * A refresh compares each coin against the price last shown and only
+ * fires cell updates for the price, value and 24h change cells that
+ * actually changed, so selection survives price refreshes.
+ * {@link #refreshCoins(Collection)} does the same for just the given
+ * coins. Each refresh reads one {@link PriceCache#snapshot()}, so every
+ * row it touches shows the same version of the prices even while a
+ * fetcher publishes the next one.
+ *
+ * Coins can be sorted by any column but Actions and filtered by a search
+ * text; lots always stay under their coin. Sorting compares the same
+ * primitive fields the cells show, never formatted text. When a refresh or
+ * an edit changes the sort key of a few coins, only those are taken out
+ * and put back by binary search, and nothing moves at all if they are
+ * still in order. A filter that extends the previous one only scans the
+ * coins already shown.
+ *
+ * Changes made through the store must be reported through
+ * {@link #holdingAdded(CryptoHolding)}, {@link #holdingUpdated(CryptoHolding, double)}
+ * and {@link #holdingRemoved(CryptoHolding)}.
+ */
+class HoldingsTableModel extends AbstractTableModel {
+
+    static final int COL_NAME = 0;
+    static final int COL_AMOUNT = 1;
+    static final int COL_PRICE = 2;
+    static final int COL_VALUE = 3;
+    static final int COL_CHANGE = 4;
+    static final int COL_ACTIONS = 5;
+
+    private static final String[] COLUMN_NAMES = {
+        "Cryptocurrency", "Amount", "Price (USD)", "Value (USD)", "24h Change", "Actions"
+    };
+
+    // Beyond this many reordered coins one sort of the nearly sorted list is cheaper
+    private static final int MAX_REINSERTS = 32;
+    // Swaps allowed per resort before falling back to reinsertion
+    private static final int MAX_SWAPS = 2048;
+
+    /** One coin, with running totals and the values last shown. */
+    private static final class Group {
+        final String coinId;
+        final int order; // Insertion sequence, the tie breaker of every sort
+        List<CryptoHolding> lots; // Read from the store the first time a lot is needed
+        int lotCount;
+        double quantity;
+        double shownPrice;
+        double shownChange;
+        boolean expanded;
+        String label; // Cached name cell text, null when stale
+        String nameKey; // Lower-case display name, for sorting
+        String searchKey; // Lower-case display name and id, for filtering
+        int index; // Position in shown or -1, valid while the layout is
+        boolean moving; // Taken out of shown while resorting
+        // Boxed numbers handed out by getValueAt, reused while the value stays the same
+        final Double[] boxes = new Double[COL_CHANGE + 1];
+
+        Group(String coinId, int order) {
+            this.coinId = coinId;
+            this.order = order;
+            this.index = -1;
+        }
+
+        int rowSpan() {
+            return expanded ? 1 + lotCount : 1;
+        }
+    }
+
+    private final HoldingStore store;
+    private final PriceCache priceCache;
+    private final AssetRegistry registry;
+
+    private final Map<String, Group> groupsByCoin = new HashMap<>();
+    private final List<String> lotLabels = new ArrayList<>();
+    private final Comparator<Group> sortOrder = this::compare;
+    private int nextOrder;
+    private double total;
+    private boolean actionsEditable = true;
+
+    // Every coin, in sort order unless allSorted is off while a filter hides some
+    private List<Group> all = new ArrayList<>();
+    private boolean allSorted = true;
+    // The coins on screen: the same list as all without a filter
+    private List<Group> shown = all;
+    private String filter = "";
+    private int sortColumn = -1;
+    private boolean sortAscending = true;
+
+    // First row of each shown group; rebuilt lazily from staleFrom on after groups move,
+    // expand or collapse
+    private int[] firstRows = new int[16];
+    private int rowCount;
+    private int staleFrom;
+
+    /**
+     * Builds the coins from the store's per-coin totals, so no lot is read
+     * until a coin is expanded or edited. Expects a loaded store and to be
+     * created before the first price fetch.
+     */
+    public HoldingsTableModel(HoldingStore store, PriceCache priceCache,
+            AssetRegistry registry) {
+        this.store = store;
+        this.priceCache = priceCache;
+        this.registry = registry;
+        rebuild();
+    }
+
+    @Override
+    public int getRowCount() {
+        layout();
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == COL_ACTIONS && actionsEditable; // Only Actions column is editable
+    }
+
+    /** Off when the Actions column is hit-tested rather than edited with buttons. */
+    public void setActionsEditable(boolean editable) {
+        actionsEditable = editable;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == COL_NAME) {
+            return assetOf(groupAt(row).coinId);
+        }
+        if (column == COL_ACTIONS) {
+            return "Actions";
+        }
+        // JTable asks for every painted cell, so coin rows reuse their boxes
+        double number = numberAt(row, column);
+        Group group = groupAt(row);
+        if (row != firstRows[group.index]) {
+            return number;
+        }
+        Double box = group.boxes[column];
+        if (box == null || Double.doubleToRawLongBits(box) != Double.doubleToRawLongBits(number)) {
+            box = number;
+            group.boxes[column] = box;
+        }
+        return box;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        if (column == COL_NAME) {
+            return Asset.class;
+        }
+        return column == COL_ACTIONS ? String.class : Double.class;
+    }
+
+    /**
+     * Raw value of a numeric cell, as last announced by a refresh. Renderers
+     * use this to format without boxing.
+     */
+    public double numberAt(int row, int column) {
+        Group group = groupAt(row);
+        int lot = row - firstRows[group.index] - 1;
+        double amount = lot < 0 ? group.quantity : lots(group).get(lot).amount;
+        switch (column) {
+            case COL_AMOUNT:
+                return amount;
+            case COL_PRICE:
+                return group.shownPrice;
+            case COL_VALUE:
+                return amount * group.shownPrice;
+            case COL_CHANGE:
+                return group.shownChange;
+            default:
+                throw new IllegalArgumentException("Not a numeric column: " + column);
+        }
+    }
+
+    /** Whether the row lists one lot of an expanded coin. */
+    public boolean isLotRow(int row) {
+        return row != firstRows[groupAt(row).index];
+    }
+
+    /** Number of lots of the coin shown on the row. */
+    public int lotCount(int row) {
+        return groupAt(row).lotCount;
+    }
+
+    /** Lots of the coin shown on the row, oldest first. */
+    public List<CryptoHolding> lotsAt(int row) {
+        return Collections.unmodifiableList(lots(groupAt(row)));
+    }
+
+    /**
+     * Identifies what a row shows across reorders: the lot on a lot row, the
+     * coin id on a coin row. See {@link #rowOf(Object)}.
+     */
+    public Object rowKey(int row) {
+        Group group = groupAt(row);
+        int lot = row - firstRows[group.index] - 1;
+        return lot >= 0 ? lots(group).get(lot) : group.coinId;
+    }
+
+    /** Row currently showing a {@link #rowKey(int)}, or -1 if it is hidden or gone. */
+    public int rowOf(Object key) {
+        layout();
+        boolean lot = key instanceof CryptoHolding;
+        Group group = groupsByCoin.get(lot ? ((CryptoHolding) key).coinId : key);
+        if (group == null || group.index < 0) {
+            return -1;
+        }
+        int first = firstRows[group.index];
+        if (!lot) {
+            return first;
+        }
+        if (group.expanded) {
+            for (int i = 0; i < group.lotCount; i++) {
+                if (group.lots.get(i) == key) {
+                    return first + 1 + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The holding a row stands for: the lot on a lot row, or the only lot of
+     * a coin row. Null for a coin row with several lots.
+     */
+    public CryptoHolding holdingAt(int row) {
+        Group group = groupAt(row);
+        int lot = row - firstRows[group.index] - 1;
+        if (lot >= 0) {
+            return lots(group).get(lot);
+        }
+        return group.lotCount == 1 ? lots(group).get(0) : null;
+    }
+
+    /** Text for the name cell: the coin with its lot count, or the lot number. */
+    public String nameAt(int row) {
+        Group group = groupAt(row);
+        int lot = row - firstRows[group.index] - 1;
+        if (lot >= 0) {
+            return lotLabel(lot);
+        }
+        if (group.label == null) {
+            String name = assetOf(group.coinId).displayName;
+            group.label = group.lotCount < 2 ? name
+                    : (group.expanded ? "\u25BE " : "\u25B8 ") + name + "  \u00B7  " + group.lotCount + " lots";
+        }
+        return group.label;
+    }
+
+    public boolean isExpanded(int row) {
+        return groupAt(row).expanded;
+    }
+
+    /** Shows or hides the lot rows of the coin on the row. Only coins with several lots expand. */
+    public void setExpanded(int row, boolean expanded) {
+        Group group = groupAt(row);
+        if (group.expanded == expanded || (expanded && group.lotCount < 2)) {
+            return;
+        }
+        if (expanded) {
+            lots(group);
+        }
+        int first = firstRows[group.index];
+        int lots = group.lotCount;
+        group.expanded = expanded;
+        group.label = null;
+        invalidateLayout(group.index);
+        if (expanded) {
+            fireTableRowsInserted(first + 1, first + lots);
+        } else {
+            fireTableRowsDeleted(first + 1, first + lots);
+        }
+        fireTableRowsUpdated(first, first);
+    }
+
+    /** Forgets cached names, e.g. after the catalog changed. */
+    public void namesChanged() {
+        for (Group group : all) {
+            group.label = null;
+            describe(group);
+        }
+        // Both the name order and what the filter matches may have changed
+        all.sort(sortOrder);
+        allSorted = true;
+        showMatches(all);
+        fireTableDataChanged();
+    }
+
+    /** Model column the coins are sorted by, or -1 for the order they were added in. */
+    public int sortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isSortAscending() {
+        return sortAscending;
+    }
+
+    /**
+     * Sorts by a column, or reverses the order if it is already sorted by
+     * it. Names start A to Z, numbers largest first.
+     */
+    public void sortBy(int column) {
+        if (column < COL_NAME || column > COL_CHANGE) {
+            return;
+        }
+        if (column == sortColumn) {
+            sortAscending = !sortAscending;
+        } else {
+            sortColumn = column;
+            sortAscending = column == COL_NAME;
+        }
+        all.sort(sortOrder);
+        allSorted = true;
+        if (shown != all) {
+            shown.sort(sortOrder);
+        }
+        invalidateLayout(0);
+        fireTableDataChanged();
+    }
+
+    /** Shows only coins whose name, symbol or id contains the text, ignoring case. */
+    public void setFilter(String text) {
+        String query = text.trim().toLowerCase(Locale.ROOT);
+        if (query.equals(filter)) {
+            return;
+        }
+        // A longer query can only match a subset of what the current one shows
+        List<Group> source = query.startsWith(filter) ? shown : sortedAll();
+        filter = query;
+        showMatches(source);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Fires cell updates for every coin whose price or change differs from
+     * what is currently shown.
+     *
+     * @return total portfolio value in USD
+     */
+    public double refresh() {
+        Map<String, PriceCache.Entry> prices = priceCache.snapshot();
+        List<Group> resorted = new ArrayList<>();
+        for (Group group : all) {
+            if (refreshGroup(group, prices)) {
+                resorted.add(group);
+            }
+        }
+        resort(resorted);
+        total = computeTotal();
+        return total;
+    }
+
+    /**
+     * Fires cell updates for the rows of the given coins only.
+     *
+     * @return how many of the coins are held
+     */
+    public int refreshCoins(Collection<String> ids) {
+        Map<String, PriceCache.Entry> prices = priceCache.snapshot();
+        List<Group> resorted = new ArrayList<>();
+        int held = 0;
+        for (String id : ids) {
+            Group group = groupsByCoin.get(id);
+            if (group != null) {
+                held++;
+                if (refreshGroup(group, prices)) {
+                    resorted.add(group);
+                }
+            }
+        }
+        resort(resorted);
+        return held;
+    }
+
+    /** Total portfolio value in USD as of the last refresh. */
+    public double totalValue() {
+        return total;
+    }
+
+    /** Must be called after a holding was added to the store. */
+    public void holdingAdded(CryptoHolding holding) {
+        layout();
+        Group group = groupsByCoin.get(holding.coinId);
+        if (group == null) {
+            group = new Group(holding.coinId, nextOrder++);
+            describe(group);
+            groupsByCoin.put(holding.coinId, group);
+            snapshotGroup(group, priceCache.snapshot());
+            addLot(group, holding);
+            if (allSorted) {
+                all.add(insertionPoint(all, group), group);
+            } else {
+                all.add(group);
+            }
+            if (shown != all) {
+                if (!group.searchKey.contains(filter)) {
+                    group.index = -1;
+                    return;
+                }
+                shown.add(insertionPoint(shown, group), group);
+            }
+            invalidateLayout(0);
+            layout();
+            int row = firstRows[group.index];
+            fireTableRowsInserted(row, row);
+            return;
+        }
+
+        addLot(group, holding);
+        if (group.index >= 0) {
+            int first = firstRows[group.index];
+            if (group.expanded) {
+                invalidateLayout(group.index);
+                int row = first + group.lotCount;
+                fireTableRowsInserted(row, row);
+            }
+            fireTableRowsUpdated(first, first);
+        }
+        if (sortsByQuantity()) {
+            resort(Collections.singletonList(group));
+        }
+    }
+
+    /** Must be called after the amount of a holding in the store changed. */
+    public void holdingUpdated(CryptoHolding holding, double previousAmount) {
+        Group group = groupsByCoin.get(holding.coinId);
+        double difference = holding.amount - previousAmount;
+        group.quantity += difference;
+        total += difference * group.shownPrice;
+
+        layout();
+        if (group.index >= 0) {
+            int first = firstRows[group.index];
+            fireTableRowsUpdated(first, first);
+            if (group.expanded) {
+                int row = first + 1 + indexOfLot(group, holding);
+                fireTableRowsUpdated(row, row);
+            }
+        }
+        if (sortsByQuantity()) {
+            resort(Collections.singletonList(group));
+        }
+    }
+
+    /** Must be called after a holding was removed from the store. */
+    public void holdingRemoved(CryptoHolding holding) {
+        Group group = groupsByCoin.get(holding.coinId);
+        layout();
+        boolean visible = group.index >= 0;
+        int first = visible ? firstRows[group.index] : -1;
+        int span = group.rowSpan();
+        int lot = -1;
+        if (group.lots != null) {
+            lot = indexOfLot(group, holding);
+            group.lots.remove(lot);
+        }
+        group.lotCount--;
+        group.quantity -= holding.amount;
+        group.label = null;
+        total -= holding.amount * group.shownPrice;
+
+        if (group.lotCount == 0) {
+            groupsByCoin.remove(group.coinId);
+            if (shown == all) {
+                all.remove(group.index);
+            } else {
+                all.remove(group);
+                if (visible) {
+                    shown.remove(group.index);
+                }
+            }
+            group.index = -1;
+            invalidateLayout(0);
+            if (visible) {
+                fireTableRowsDeleted(first, first + span - 1);
+            }
+            return;
+        }
+        if (group.expanded) {
+            group.expanded = group.lotCount > 1;
+            invalidateLayout(group.index);
+            if (visible && group.expanded) {
+                fireTableRowsDeleted(first + 1 + lot, first + 1 + lot);
+            } else if (visible) {
+                fireTableRowsDeleted(first + 1, first + 2); // Both lot rows of the last pair
+            }
+        }
+        if (visible) {
+            fireTableRowsUpdated(first, first);
+        }
+        if (sortsByQuantity()) {
+            resort(Collections.singletonList(group));
+        }
+    }
+
+    /** @return whether the coin's sort key changed */
+    private boolean refreshGroup(Group group, Map<String, PriceCache.Entry> prices) {
+        PriceCache.Entry entry = prices.get(group.coinId);
+        if (entry == null) {
+            return false;
+        }
+        boolean priceChanged = Double.compare(group.shownPrice, entry.priceUSD) != 0;
+        boolean changeChanged = Double.compare(group.shownChange, entry.change24h) != 0;
+        if (!priceChanged && !changeChanged) {
+            return false;
+        }
+        if (priceChanged) {
+            total += group.quantity * (entry.priceUSD - group.shownPrice);
+            group.shownPrice = entry.priceUSD;
+        }
+        group.shownChange = entry.change24h;
+
+        layout();
+        if (group.index >= 0) {
+            int first = firstRows[group.index];
+            int last = first + group.rowSpan() - 1;
+            for (int row = first; row <= last; row++) {
+                if (priceChanged) {
+                    fireTableCellUpdated(row, COL_PRICE);
+                    fireTableCellUpdated(row, COL_VALUE);
+                }
+                if (changeChanged) {
+                    fireTableCellUpdated(row, COL_CHANGE);
+                }
+            }
+        }
+        return (priceChanged && (sortColumn == COL_PRICE || sortColumn == COL_VALUE))
+                || (changeChanged && sortColumn == COL_CHANGE);
+    }
+
+    private boolean sortsByQuantity() {
+        return sortColumn == COL_AMOUNT || sortColumn == COL_VALUE;
+    }
+
+    /**
+     * Puts coins whose sort key changed back in order. The other coins
+     * never change order among themselves, so the list is sorted once every
+     * changed coin is in order with its neighbours. A small price move
+     * usually leaves a coin in place or a few rows away, so each one is
+     * swapped towards its place; swaps keep the layout valid. If that takes
+     * too long the changed coins are taken out and reinserted by binary
+     * search instead. Rows keep their count, so one update event covers the
+     * range that moved and selection stays put.
+     */
+    private void resort(List<Group> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        if (shown != all) {
+            allSorted = false; // Hidden coins are put in order when the filter changes
+        }
+        layout();
+        boolean ordered = true;
+        for (Group group : changed) {
+            if (group.index >= 0 && !inOrder(group)) {
+                ordered = false;
+                break;
+            }
+        }
+        if (ordered) {
+            return;
+        }
+
+        int from = Integer.MAX_VALUE;
+        int to = -1;
+        if (changed.size() > MAX_REINSERTS) {
+            shown.sort(sortOrder); // Mostly sorted already, which TimSort runs through quickly
+            from = 0;
+            to = shown.size() - 1;
+            invalidateLayout(0);
+        } else {
+            int swaps = 0;
+            boolean swapped = true;
+            while (swapped && swaps < MAX_SWAPS) {
+                swapped = false;
+                for (Group group : changed) {
+                    while (group.index >= 0 && swaps < MAX_SWAPS) {
+                        int index = group.index;
+                        if (index > 0 && compare(shown.get(index - 1), group) > 0) {
+                            index--;
+                        } else if (index == shown.size() - 1 || compare(group, shown.get(index + 1)) < 0) {
+                            break;
+                        }
+                        swapWithNext(index);
+                        from = Math.min(from, index);
+                        to = Math.max(to, index + 1);
+                        swaps++;
+                        swapped = true;
+                    }
+                }
+            }
+            if (swapped) {
+                // Gave up swapping; the unchanged coins are still in order, so reinsert the rest
+                List<Group> moving = new ArrayList<>(changed.size());
+                for (Group group : changed) {
+                    if (group.index >= 0 && !group.moving) {
+                        group.moving = true;
+                        moving.add(group);
+                        from = Math.min(from, group.index);
+                        to = Math.max(to, group.index);
+                    }
+                }
+                shown.subList(from, shown.size()).removeIf(group -> group.moving);
+                for (Group group : moving) {
+                    int index = insertionPoint(shown, group);
+                    shown.add(index, group);
+                    group.moving = false;
+                    from = Math.min(from, index);
+                }
+                invalidateLayout(from);
+                layout();
+                for (Group group : moving) {
+                    to = Math.max(to, group.index);
+                }
+            }
+        }
+        layout();
+        fireTableRowsUpdated(firstRows[from], firstRows[to] + shown.get(to).rowSpan() - 1);
+    }
+
+    /** Swaps the shown groups at index and index + 1, keeping the layout valid. */
+    private void swapWithNext(int index) {
+        Group next = shown.get(index + 1);
+        Group group = shown.set(index, next);
+        shown.set(index + 1, group);
+        next.index = index;
+        group.index = index + 1;
+        firstRows[index + 1] = firstRows[index] + next.rowSpan();
+    }
+
+    private boolean inOrder(Group group) {
+        int index = group.index;
+        return (index == 0 || compare(shown.get(index - 1), group) < 0)
+                && (index == shown.size() - 1 || compare(group, shown.get(index + 1)) < 0);
+    }
+
+    /** Where the group goes in a sorted list that does not contain it. */
+    private int insertionPoint(List<Group> list, Group group) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(list.get(middle), group) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Sort order of two coins; never 0 for different coins. */
+    private int compare(Group a, Group b) {
+        int result;
+        switch (sortColumn) {
+            case COL_NAME:
+                result = a.nameKey.compareTo(b.nameKey);
+                break;
+            case COL_AMOUNT:
+                result = Double.compare(a.quantity, b.quantity);
+                break;
+            case COL_PRICE:
+                result = Double.compare(a.shownPrice, b.shownPrice);
+                break;
+            case COL_VALUE:
+                result = Double.compare(a.quantity * a.shownPrice, b.quantity * b.shownPrice);
+                break;
+            case COL_CHANGE:
+                result = Double.compare(a.shownChange, b.shownChange);
+                break;
+            default:
+                result = 0;
+                break;
+        }
+        if (!sortAscending) {
+            result = -result;
+        }
+        return result != 0 ? result : Integer.compare(a.order, b.order);
+    }
+
+    private List<Group> sortedAll() {
+        if (!allSorted) {
+            all.sort(sortOrder);
+            allSorted = true;
+        }
+        return all;
+    }
+
+    /** Makes shown the coins of source, which is in sort order, that match the filter. */
+    private void showMatches(List<Group> source) {
+        for (Group group : shown) {
+            group.index = -1;
+        }
+        if (filter.isEmpty()) {
+            shown = sortedAll();
+        } else {
+            List<Group> matches = new ArrayList<>();
+            for (Group group : source) {
+                if (group.searchKey.contains(filter)) {
+                    matches.add(group);
+                }
+            }
+            shown = matches;
+        }
+        invalidateLayout(0);
+    }
+
+    private void addLot(Group group, CryptoHolding holding) {
+        if (group.lots != null) {
+            group.lots.add(holding);
+        }
+        group.lotCount++;
+        group.quantity += holding.amount;
+        group.label = null;
+        total += holding.amount * group.shownPrice;
+    }
+
+    /** The coin's lots, oldest first, read from the store on first use. */
+    private List<CryptoHolding> lots(Group group) {
+        if (group.lots == null) {
+            group.lots = new ArrayList<>(store.lotsOf(group.coinId));
+        }
+        return group.lots;
+    }
+
+    private static int indexOfLot(Group group, CryptoHolding holding) {
+        for (int i = 0; i < group.lots.size(); i++) {
+            if (group.lots.get(i) == holding) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a lot of " + group.coinId);
+    }
+
+    private double computeTotal() {
+        double sum = 0.0;
+        for (Group group : all) {
+            sum += group.quantity * group.shownPrice;
+        }
+        return sum;
+    }
+
+    /** One group per coin from the store's running totals; no lot is read. Constructor only. */
+    private void rebuild() {
+        HoldingsSnapshot totals = store.totals();
+        Map<String, PriceCache.Entry> prices = priceCache.snapshot();
+        for (Map.Entry<String, Double> coin : totals.amounts.entrySet()) {
+            Group group = new Group(coin.getKey(), nextOrder++);
+            group.quantity = coin.getValue();
+            group.lotCount = totals.lotCount(coin.getKey());
+            describe(group);
+            all.add(group);
+            groupsByCoin.put(group.coinId, group);
+            snapshotGroup(group, prices);
+        }
+        all.sort(sortOrder);
+        allSorted = true;
+        shown = all;
+        showMatches(all);
+        total = computeTotal();
+    }
+
+    private void describe(Group group) {
+        Asset asset = assetOf(group.coinId);
+        group.nameKey = asset.displayName.toLowerCase(Locale.ROOT);
+        group.searchKey = group.nameKey + ' ' + group.coinId.toLowerCase(Locale.ROOT);
+    }
+
+    private static void snapshotGroup(Group group, Map<String, PriceCache.Entry> prices) {
+        PriceCache.Entry entry = prices.get(group.coinId);
+        group.shownPrice = entry == null ? 0.0 : entry.priceUSD;
+        group.shownChange = entry == null ? 0.0 : entry.change24h;
+    }
+
+    /**
+     * Marks the rows of the group at this position in shown, and all after
+     * it, for relayout. A negative position is a hidden group, which has none.
+     */
+    private void invalidateLayout(int from) {
+        if (from >= 0) {
+            staleFrom = Math.min(staleFrom, from);
+        }
+    }
+
+    private void layout() {
+        if (staleFrom == Integer.MAX_VALUE) {
+            return;
+        }
+        if (firstRows.length < shown.size()) {
+            firstRows = Arrays.copyOf(firstRows, Math.max(shown.size(), firstRows.length * 2));
+        }
+        int from = Math.min(staleFrom, shown.size());
+        int row = from == 0 ? 0 : firstRows[from - 1] + shown.get(from - 1).rowSpan();
+        for (int i = from; i < shown.size(); i++) {
+            Group group = shown.get(i);
+            group.index = i;
+            firstRows[i] = row;
+            row += group.rowSpan();
+        }
+        rowCount = row;
+        staleFrom = Integer.MAX_VALUE;
+    }
+
+    private Group groupAt(int row) {
+        layout();
+        if (rowCount == shown.size()) {
+            return shown.get(row); // Nothing expanded
+        }
+        int index = Arrays.binarySearch(firstRows, 0, shown.size(), row);
+        return shown.get(index >= 0 ? index : -index - 2);
+    }
+
+    private String lotLabel(int lot) {
+        while (lotLabels.size() <= lot) {
+            lotLabels.add("      Lot " + (lotLabels.size() + 1));
+        }
+        return lotLabels.get(lot);
+    }
+
+    private Asset assetOf(String coinId) {
+        Asset asset = registry.get(coinId);
+        if (asset == null) {
+            // Coin no longer in the registry, show its raw id
+            asset = new Asset(coinId, "?", coinId, null);
+        }
+        return asset;
+    }
+}
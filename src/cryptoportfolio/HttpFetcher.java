@@ -0,0 +1,145 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP layer for API calls.
+ *
+ * One {@link HttpClient} is reused for every request, so connections are
+ * pooled and, where the server supports it, multiplexed over HTTP/2.
+ * Responses are requested gzip-compressed. The ETag and Last-Modified
+ * validators of each URL are remembered together with the parsed body;
+ * the next request for that URL is conditional, and a 304 answer returns
+ * the remembered result without reading or parsing anything.
+ *
+ * The client keeps its default executor. Callers block in {@code send} on
+ * {@link IoExecutor} threads, and on JDKs without virtual threads that pool
+ * is bounded: if the client completed responses on the same pool, a full
+ * pool of waiting callers would starve the very tasks they wait for.
+ */
+final class HttpFetcher {
+
+    static final HttpFetcher SHARED = new HttpFetcher(Duration.ofSeconds(10), Duration.ofSeconds(20));
+
+    private static final int MAX_CACHED_URLS = 256;
+
+    /** Turns a response body into a result that can be reused on a 304. */
+    interface BodyParser<T> {
+        T parse(Reader body) throws IOException;
+    }
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    // Least recently used URLs are forgotten first
+    private final Map<String, Cached> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                    return size() > MAX_CACHED_URLS;
+                }
+            });
+
+    HttpFetcher(Duration connectTimeout, Duration requestTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+    }
+
+    /** The shared client, for protocols other than plain GETs. */
+    HttpClient client() {
+        return client;
+    }
+
+    /**
+     * GETs the URL and parses the body, or returns the previous result for
+     * the same URL and parser if the server answers 304 Not Modified.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String url, BodyParser<T> parser) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        Cached previous = cache.get(url);
+        if (previous != null && previous.parser == parser) {
+            if (previous.etag != null) {
+                request.header("If-None-Match", previous.etag);
+            }
+            if (previous.lastModified != null) {
+                request.header("If-Modified-Since", previous.lastModified);
+            }
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while requesting " + url, ex);
+        }
+
+        int status = response.statusCode();
+        if (status == 304 && previous != null && previous.parser == parser) {
+            response.body().close();
+            return (T) previous.result;
+        }
+        if (status != 200) {
+            response.body().close();
+            throw new IOException("HTTP " + status + " from " + url);
+        }
+
+        InputStream body = response.body();
+        if (response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+            body = new GZIPInputStream(body);
+        }
+        T result;
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            result = parser.parse(reader);
+        }
+
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        if (etag != null || lastModified != null) {
+            cache.put(url, new Cached(parser, etag, lastModified, result));
+        } else {
+            cache.remove(url);
+        }
+        return result;
+    }
+
+    private static final class Cached {
+        final BodyParser<?> parser;
+        final String etag;
+        final String lastModified;
+        final Object result;
+
+        Cached(BodyParser<?> parser, String etag, String lastModified, Object result) {
+            this.parser = parser;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+    }
+}
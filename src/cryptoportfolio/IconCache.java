@@ -0,0 +1,207 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Coin icons, loaded in the background and kept in a bounded LRU cache.
+ *
+ * Nothing is read at startup. The first time an icon is asked for, a
+ * placeholder is returned and the real image is loaded on the
+ * {@link IoExecutor}: from the pre-scaled copy in {@code icon-cache/} if
+ * there is one, otherwise decoded from the bundled resource, scaled down in
+ * halving steps and written to {@code icon-cache/} for next time. Loaded
+ * images are compatible with the screen so they draw without conversion.
+ *
+ * All methods except loading itself run on the EDT.
+ */
+class IconCache {
+
+    static final String CACHE_SIZE_PROPERTY = "cryptoportfolio.iconCacheSize";
+    static final int ICON_SIZE = 32;
+
+    private static final int DEFAULT_CACHE_SIZE = 512;
+    private static final File CACHE_DIR = new File("icon-cache", Integer.toString(ICON_SIZE));
+    private static final Color PLACEHOLDER_COLOR = new Color(100, 100, 100);
+    private static final Font PLACEHOLDER_FONT = new Font("Arial", Font.BOLD, 16);
+
+    private final Map<String, ImageIcon> icons;
+    private final Set<String> loading = new HashSet<>();
+    private final Runnable onLoaded;
+
+    /**
+     * @param onLoaded runs on the EDT whenever a real icon replaced a placeholder
+     */
+    IconCache(int maxIcons, Runnable onLoaded) {
+        this.onLoaded = onLoaded;
+        this.icons = new LinkedHashMap<String, ImageIcon>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImageIcon> eldest) {
+                return size() > maxIcons;
+            }
+        };
+    }
+
+    static IconCache fromSystemProperties(Runnable onLoaded) {
+        return new IconCache(Math.max(16, Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE)), onLoaded);
+    }
+
+    /** Returns the icon for the asset, or a placeholder while it loads. */
+    ImageIcon get(Asset asset) {
+        ImageIcon icon = icons.get(asset.id);
+        if (icon == null) {
+            icon = createPlaceholderIcon(asset);
+            icons.put(asset.id, icon);
+            if (asset.iconFile != null && loading.add(asset.id)) {
+                IoExecutor.shared().execute(() -> load(asset));
+            }
+        }
+        return icon;
+    }
+
+    /** Forgets every icon, e.g. after the catalog changed. */
+    void clear() {
+        icons.clear();
+    }
+
+    // I/O thread
+    private void load(Asset asset) {
+        BufferedImage image = null;
+        try {
+            image = readScaled(asset.iconFile);
+            if (image == null) {
+                System.err.println("Image not found: " + asset.iconFile);
+            }
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Failed to load image for " + asset.displayName + ": " + ex.getMessage());
+        }
+        BufferedImage loaded = image;
+        SwingUtilities.invokeLater(() -> {
+            loading.remove(asset.id);
+            if (loaded != null) {
+                icons.put(asset.id, new ImageIcon(loaded));
+                onLoaded.run();
+            }
+        });
+    }
+
+    private static BufferedImage readScaled(String iconFile) throws IOException {
+        File cached = new File(CACHE_DIR, iconFile);
+        if (cached.exists()) {
+            BufferedImage image = ImageIO.read(cached);
+            if (image != null) {
+                return toCompatible(image, ICON_SIZE);
+            }
+        }
+
+        BufferedImage source;
+        // Try to load from resources folder in src directory
+        try (InputStream stream = IconCache.class.getResourceAsStream("/resources/" + iconFile)) {
+            if (stream != null) {
+                source = ImageIO.read(stream);
+            } else {
+                // If not found in classpath, try loading from file system
+                File file = new File("src/resources/" + iconFile);
+                source = file.exists() ? ImageIO.read(file) : null;
+            }
+        }
+        if (source == null) {
+            return null;
+        }
+
+        BufferedImage scaled = scale(source, ICON_SIZE);
+        writeCache(cached, scaled);
+        return toCompatible(scaled, ICON_SIZE);
+    }
+
+    /** Halves the image with bilinear filtering until the last step, which keeps it sharp. */
+    private static BufferedImage scale(BufferedImage source, int size) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(size, width / 2);
+            height = Math.max(size, height / 2);
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(current, 0, 0, width, height, null);
+            g2d.dispose();
+            current = step;
+        } while (width > size || height > size);
+        return current;
+    }
+
+    private static BufferedImage toCompatible(BufferedImage image, int size) {
+        BufferedImage target;
+        if (GraphicsEnvironment.isHeadless()) {
+            target = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            target = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g2d = target.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, 0, 0, size, size, null);
+        g2d.dispose();
+        return target;
+    }
+
+    private static void writeCache(File cached, BufferedImage image) {
+        try {
+            Files.createDirectories(cached.getParentFile().toPath());
+            File tmp = new File(cached.getPath() + ".tmp");
+            if (ImageIO.write(image, "png", tmp)) {
+                Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException ex) {
+            System.err.println("Could not cache icon " + cached + ": " + ex.getMessage());
+        }
+    }
+
+    static ImageIcon createPlaceholderIcon(Asset asset) {
+        BufferedImage placeholder = new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = placeholder.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Draw a circle with first letter
+        g2d.setColor(PLACEHOLDER_COLOR);
+        g2d.fillOval(0, 0, ICON_SIZE, ICON_SIZE);
+
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(PLACEHOLDER_FONT);
+        String letter = asset.symbol.substring(0, 1);
+        FontMetrics fm = g2d.getFontMetrics();
+        int x = (ICON_SIZE - fm.stringWidth(letter)) / 2;
+        int y = ((ICON_SIZE - fm.getHeight()) / 2) + fm.getAscent();
+        g2d.drawString(letter, x, y);
+        g2d.dispose();
+
+        return new ImageIcon(placeholder);
+    }
+}
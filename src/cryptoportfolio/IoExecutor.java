@@ -0,0 +1,57 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor for blocking I/O: HTTP requests, file reads and decoding.
+ *
+ * On a JDK with virtual threads every task gets its own virtual thread, so
+ * blocked requests cost almost nothing. Older JDKs get a bounded pool of
+ * daemon threads instead. Callers that must limit how much runs at once,
+ * such as concurrent API requests, do so themselves.
+ *
+ * Tasks must finish on their own: a bounded pool can be used up by work
+ * that waits on other tasks in the same queue. Loops that live as long as
+ * a connection run on threads of their own, and the HTTP client completes
+ * responses on its own executor.
+ */
+final class IoExecutor {
+
+    private static final ExecutorService SHARED = create();
+
+    private IoExecutor() {
+    }
+
+    static ExecutorService shared() {
+        return SHARED;
+    }
+
+    private static ExecutorService create() {
+        try {
+            // Looked up reflectively so the project still builds for Java 11
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "io-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+}
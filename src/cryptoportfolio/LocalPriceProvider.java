@@ -0,0 +1,59 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Offline price source for testing and benchmarking the refresh path.
+ *
+ * With a file, every fetch re-reads it so prices can be edited while the app
+ * runs. Without one, prices follow a seeded random walk per coin id: the
+ * n-th fetch always returns the same numbers for the same id.
+ */
+class LocalPriceProvider implements PriceProvider {
+
+    private final File file;
+    private final Map<String, Long> steps = new HashMap<>();
+
+    public LocalPriceProvider(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void fetchPrices(Collection<String> ids, PriceConsumer consumer) throws IOException {
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                PriceJsonParser.parse(reader, consumer);
+            }
+            return;
+        }
+
+        synchronized (steps) {
+            for (String id : ids) {
+                long step = steps.merge(id, 1L, Long::sum);
+                syntheticPrice(id, step, consumer);
+            }
+        }
+    }
+
+    static void syntheticPrice(String id, long step, PriceConsumer consumer) {
+        // Base price between 0.01 and ~100k depending on the id
+        long seed = id.hashCode() * 0x9E3779B97F4A7C15L;
+        double base = Math.pow(10, Math.floorMod(seed, 700) / 100.0 - 2);
+        // Deterministic wobble of up to +/-5% around the base
+        double phase = Math.floorMod(seed >>> 16, 360);
+        double change = 5.0 * Math.sin(Math.toRadians(phase + step * 7));
+        consumer.accept(id, base * (1 + change / 100.0), change);
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in ticker feed for {@link PriceStream}, for testing without a real
+ * exchange.
+ *
+ * A minimal WebSocket server on the loopback interface. Every tick it sends
+ * one message per subscribed coin, with prices from the same synthetic walk
+ * as {@link LocalPriceProvider}, so clients see bursts of small messages like
+ * a busy exchange feed. Only what the price stream needs is implemented:
+ * text frames, ping and close.
+ */
+class LocalTickerServer {
+
+    static final int DEFAULT_PORT = 8765;
+    static final long DEFAULT_TICK_MILLIS = 250;
+
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final byte[] GOING_AWAY = {0x03, (byte) 0xE9}; // Close status 1001
+
+    private final ServerSocket serverSocket;
+    private final long tickMillis;
+    private final ScheduledExecutorService ticker;
+    private final Set<Connection> clients = ConcurrentHashMap.newKeySet();
+
+    LocalTickerServer(int port, long tickMillis) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.tickMillis = tickMillis;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "local-ticker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Says goodbye to every client with a close frame, then drops the connections. */
+    void stop() throws IOException {
+        ticker.shutdownNow();
+        serverSocket.close();
+        for (Connection client : clients) {
+            try {
+                // After any tick frame still being written, so clients never see half a frame
+                client.send(0x8, GOING_AWAY);
+            } catch (IOException ex) {
+                // Already gone
+            }
+            client.socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                // Connections live as long as the client, so they get a thread each rather than an I/O task
+                Thread thread = new Thread(() -> serve(socket), "local-ticker-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Connection connection = null;
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            connection = new Connection(s);
+            clients.add(connection);
+            handshake(in, connection.out);
+            connection.ticks = ticker.scheduleAtFixedRate(connection::tick, tickMillis, tickMillis,
+                    TimeUnit.MILLISECONDS);
+            connection.readLoop(in);
+        } catch (EOFException ex) {
+            // Client went away
+        } catch (IOException ex) {
+            System.err.println("Ticker connection closed: " + ex.getMessage());
+        } finally {
+            if (connection != null) {
+                clients.remove(connection);
+                if (connection.ticks != null) {
+                    connection.ticks.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static void handshake(InputStream in, OutputStream out) throws IOException {
+        String key = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) {
+            throw new IOException("Not a WebSocket upgrade request");
+        }
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(
+                    sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /** One client: its subscription, step counter and synchronized writes. */
+    private static final class Connection {
+        final Socket socket;
+        final OutputStream out;
+        volatile List<String> subscribed = Collections.emptyList();
+        ScheduledFuture<?> ticks;
+        long step;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        void readLoop(DataInputStream in) throws IOException {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            while (true) {
+                int first = in.readUnsignedByte();
+                int second = in.readUnsignedByte();
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+                byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) {
+                    in.readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+
+                switch (opcode) {
+                    case 0x0: // Continuation
+                    case 0x1: // Text
+                        text.write(payload);
+                        if (fin) {
+                            subscribe(new String(text.toByteArray(), StandardCharsets.UTF_8));
+                            text.reset();
+                        }
+                        break;
+                    case 0x8: // Close
+                        send(0x8, payload);
+                        return;
+                    case 0x9: // Ping
+                        send(0xA, payload);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        /** Parses {@code {"subscribe":["a","b"]}} without a JSON library. */
+        private void subscribe(String message) {
+            int open = message.indexOf('[');
+            int close = message.lastIndexOf(']');
+            List<String> ids = new ArrayList<>();
+            if (message.contains("\"subscribe\"") && open >= 0 && close > open) {
+                for (String part : message.substring(open + 1, close).split(",")) {
+                    String id = part.trim();
+                    if (id.length() > 2 && id.startsWith("\"") && id.endsWith("\"")) {
+                        ids.add(id.substring(1, id.length() - 1));
+                    }
+                }
+            }
+            subscribed = ids;
+        }
+
+        void tick() {
+            step++;
+            StringBuilder json = new StringBuilder();
+            try {
+                for (String id : subscribed) {
+                    json.setLength(0);
+                    LocalPriceProvider.syntheticPrice(id, step, (coin, price, change) ->
+                            json.append("{\"").append(coin).append("\":{\"usd\":")
+                                    .append(String.format(Locale.ROOT, "%.8f", price))
+                                    .append(",\"usd_24h_change\":")
+                                    .append(String.format(Locale.ROOT, "%.4f", change))
+                                    .append("}}"));
+                    send(0x1, json.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException ex) {
+                ticks.cancel(false);
+            }
+        }
+
+        synchronized void send(int opcode, byte[] payload) throws IOException {
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length < 65536) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length & 0xFF);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) ((long) payload.length >>> shift) & 0xFF);
+                }
+            }
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    /**
+     * Runs a standalone feed. Arguments: {@code [port] [tickMillis]}.
+     * Point the app at it with {@code -Dcryptoportfolio.stream=ws://localhost:8765/}.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long tickMillis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_TICK_MILLIS;
+        LocalTickerServer server = new LocalTickerServer(port, tickMillis);
+        server.start();
+        System.out.println("Ticker feed on ws://localhost:" + server.getPort() + "/");
+        Thread.currentThread().join();
+    }
+}
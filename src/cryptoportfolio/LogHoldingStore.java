@@ -0,0 +1,408 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary store for holdings.
+ *
+ * The file starts with a magic number and a format version, followed by a
+ * log of add/edit/remove records. Each record is framed as
+ * {@code [length][crc32][payload]} so a torn write at the end of the file is
+ * detected and dropped on load. Writes happen on a background thread which
+ * fsyncs once per batch of queued records and compacts the log into plain
+ * add records once it grows well beyond the number of live holdings.
+ *
+ * Version 2 records store the coin id. Version 1 files stored display names
+ * and are rewritten as version 2 on load.
+ */
+class LogHoldingStore implements HoldingStore {
+
+    static final String FILE_NAME = "portfolio.bin";
+    static final String LEGACY_FILE_NAME = "portfolio.dat";
+
+    private static final int MAGIC = 0x43505446; // "CPTF"
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_EDIT = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final Op CLOSE = new Op((byte) 0, -1, null, 0.0);
+
+    // Compact once the log holds this many records more than live holdings
+    private static final int COMPACT_SLACK = 256;
+    // Largest payload writeRecord can produce: type, a UTF coin id and a double
+    private static final int MAX_RECORD_SIZE = 1 + 2 + 0xFFFF + 8;
+    private static final long RETRY_MILLIS = 1000;
+
+    private final File file;
+    private final AssetRegistry registry;
+    private List<CryptoHolding> holdings;
+    private final CoinTotals totals = new CoinTotals();
+    private final LinkedBlockingQueue<Op> pending = new LinkedBlockingQueue<>();
+    private Thread writerThread;
+
+    // Owned by the writer thread: mirror of the live holdings and record count
+    private final List<Op> replica = new ArrayList<>();
+    private int recordCount;
+    private short loadedVersion = VERSION;
+    private FileChannel channel;
+
+    public LogHoldingStore(AssetRegistry registry) {
+        this(new File(FILE_NAME), registry);
+    }
+
+    public LogHoldingStore(File file, AssetRegistry registry) {
+        this.file = file;
+        this.registry = registry;
+    }
+
+    /**
+     * Loads all holdings, migrating a legacy serialized {@code portfolio.dat}
+     * on first run, and starts the background writer.
+     */
+    @Override
+    public List<CryptoHolding> load() throws IOException {
+        File legacy = new File(file.getParentFile(), LEGACY_FILE_NAME);
+        boolean migrate = !file.exists() && legacy.exists();
+        ArrayList<CryptoHolding> holdings;
+        if (file.exists()) {
+            holdings = replay();
+        } else if (migrate) {
+            holdings = readLegacy(legacy);
+        } else {
+            holdings = new ArrayList<>();
+        }
+
+        for (int i = 0; i < holdings.size(); i++) {
+            CryptoHolding holding = holdings.get(i);
+            holding.coinId = registry.canonicalId(holding.coinId);
+            holding.index = i;
+            totals.add(holding.coinId, holding.amount, 1);
+            replica.add(new Op(OP_ADD, -1, holding.coinId, holding.amount));
+        }
+        if (!file.exists() || loadedVersion != VERSION || recordCount > replica.size() + COMPACT_SLACK) {
+            compact();
+        }
+        if (migrate && !legacy.renameTo(new File(legacy.getPath() + ".bak"))) {
+            System.err.println("Could not rename " + legacy + " after migration");
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        writerThread = new Thread(this::writeLoop, "holding-store-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "holding-store-shutdown"));
+        this.holdings = holdings;
+        return holdings;
+    }
+
+    @Override
+    public void add(CryptoHolding holding) {
+        holding.index = holdings.size();
+        holdings.add(holding);
+        totals.add(holding.coinId, holding.amount, 1);
+        pending.add(new Op(OP_ADD, -1, holding.coinId, holding.amount));
+    }
+
+    @Override
+    public void update(int index, double amount) {
+        CryptoHolding holding = holdings.get(index);
+        totals.add(holding.coinId, amount - holding.amount, 0);
+        holding.amount = amount;
+        pending.add(new Op(OP_EDIT, index, null, amount));
+    }
+
+    @Override
+    public void remove(int index) {
+        CryptoHolding holding = holdings.remove(index);
+        totals.add(holding.coinId, -holding.amount, -1);
+        for (int i = index; i < holdings.size(); i++) {
+            holdings.get(i).index = i;
+        }
+        pending.add(new Op(OP_REMOVE, index, null, 0.0));
+    }
+
+    @Override
+    public HoldingsSnapshot totals() {
+        return totals.snapshot();
+    }
+
+    @Override
+    public List<CryptoHolding> lotsOf(String coinId) {
+        List<CryptoHolding> lots = new ArrayList<>();
+        if (holdings != null) {
+            for (CryptoHolding holding : holdings) {
+                if (holding.coinId.equals(coinId)) {
+                    lots.add(holding);
+                }
+            }
+        }
+        return lots;
+    }
+
+    /** Flushes queued records and stops the writer. Safe to call twice. */
+    @Override
+    public void close() {
+        Thread thread = writerThread;
+        if (thread == null || !thread.isAlive()) {
+            return;
+        }
+        pending.add(CLOSE);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Op> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                // A batch whose write failed is kept and retried with whatever queued since
+                Op next = batch.isEmpty() ? pending.take() : pending.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                if (next != null) {
+                    batch.add(next);
+                }
+                pending.drainTo(batch);
+                running = !batch.remove(CLOSE);
+
+                writeBatch(batch);
+                batch.clear();
+
+                if (recordCount > replica.size() + COMPACT_SLACK) {
+                    channel.close();
+                    try {
+                        compact();
+                    } finally {
+                        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                running = false;
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if (!batch.isEmpty()) {
+            System.err.println("Could not save " + batch.size() + " holding changes to " + file);
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends a batch with one fsync and only then applies it to the replica.
+     * A failed write is cut back off the file so the log and the replica
+     * still agree, and the caller keeps the batch to retry.
+     */
+    private void writeBatch(List<Op> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        for (Op op : batch) {
+            writeRecord(buffer, op);
+        }
+        long start = channel.size();
+        try {
+            channel.write(ByteBuffer.wrap(buffer.toByteArray()));
+            channel.force(false);
+        } catch (IOException ex) {
+            try {
+                channel.truncate(start);
+            } catch (IOException truncateFailed) {
+                ex.addSuppressed(truncateFailed); // Replay drops the torn tail instead
+            }
+            throw ex;
+        }
+        for (Op op : batch) {
+            apply(op);
+            recordCount++;
+        }
+    }
+
+    private void apply(Op op) {
+        switch (op.type) {
+            case OP_ADD:
+                replica.add(op);
+                break;
+            case OP_EDIT:
+                Op current = replica.get(op.index);
+                replica.set(op.index, new Op(OP_ADD, -1, current.coinId, op.amount));
+                break;
+            case OP_REMOVE:
+                replica.remove(op.index);
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type " + op.type);
+        }
+    }
+
+    /** Rewrites the log as one add record per live holding, atomically. */
+    private void compact() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(buffer);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        for (Op op : replica) {
+            writeRecord(buffer, op);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(buffer.toByteArray()));
+            out.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordCount = replica.size();
+    }
+
+    private ArrayList<CryptoHolding> replay() throws IOException {
+        ArrayList<CryptoHolding> holdings = new ArrayList<>();
+        long validLength = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a holdings file: " + file);
+            }
+            loadedVersion = in.readShort();
+            if (loadedVersion < 1 || loadedVersion > VERSION) {
+                throw new IOException("Unsupported holdings file version " + loadedVersion);
+            }
+
+            while (true) {
+                int length;
+                int crc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break; // Garbage length from a torn or corrupt header
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException ex) {
+                    break; // Clean end, or a torn record that never got fsynced
+                }
+                CRC32 check = new CRC32();
+                check.update(payload);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                applyRecord(holdings, payload);
+                recordCount++;
+                validLength += 8 + length;
+            }
+        }
+
+        if (validLength < file.length()) {
+            System.err.println("Dropping torn tail of " + file + " at byte " + validLength);
+            try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+            }
+        }
+        return holdings;
+    }
+
+    private static void applyRecord(List<CryptoHolding> holdings, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case OP_ADD:
+                String coinId = in.readUTF();
+                holdings.add(new CryptoHolding(coinId, in.readDouble()));
+                break;
+            case OP_EDIT:
+                holdings.get(in.readInt()).amount = in.readDouble();
+                break;
+            case OP_REMOVE:
+                holdings.remove(in.readInt());
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream target, Op op) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(32);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeByte(op.type);
+        switch (op.type) {
+            case OP_ADD:
+                payload.writeUTF(op.coinId);
+                payload.writeDouble(op.amount);
+                break;
+            case OP_EDIT:
+                payload.writeInt(op.index);
+                payload.writeDouble(op.amount);
+                break;
+            default:
+                payload.writeInt(op.index);
+                break;
+        }
+        byte[] bytes = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    /** One-time import of the old Java-serialized portfolio. */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<CryptoHolding> readLegacy(File legacy) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(legacy))) {
+            return (ArrayList<CryptoHolding>) ois.readObject();
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Unreadable legacy portfolio " + legacy, ex);
+        }
+    }
+
+    private static final class Op {
+        final byte type;
+        final int index;
+        final String coinId;
+        final double amount;
+
+        Op(byte type, int index, String coinId, double amount) {
+            this.type = type;
+            this.index = index;
+            this.coinId = coinId;
+            this.amount = amount;
+        }
+    }
+}
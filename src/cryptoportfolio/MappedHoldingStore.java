@@ -0,0 +1,420 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holdings kept in a memory-mapped file of fixed-width records.
+ *
+ * Loading only maps the file and reads the record count, so startup does not
+ * depend on portfolio size. Rows are decoded the first time they are asked
+ * for, typically when the table paints them. Dirty pages are forced to disk
+ * in the background at most once per second.
+ *
+ * Per-coin totals come from a small summary file written on close, next to
+ * the records. The header's clean flag says whether that summary matches
+ * the records; it is cleared as soon as the file is opened, so after a crash
+ * the totals are rebuilt once by reading every record.
+ *
+ * Layout: {@code [magic:int][version:short][clean:short][count:int]}
+ * followed by records of {@code [idLength:short][coinId:utf8, padded][amount:double]}.
+ * Version 1 files held display names instead of coin ids and are rewritten
+ * in place the first time they are opened.
+ */
+class MappedHoldingStore implements HoldingStore {
+
+    static final String FILE_NAME = "portfolio.map";
+
+    private static final int MAGIC = 0x43505446; // "CPTF"
+    private static final short VERSION = 2;
+    private static final int CLEAN_OFFSET = 6;
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEADER_SIZE = 12;
+
+    private static final int ID_BYTES = 54;
+    private static final int RECORD_SIZE = 2 + ID_BYTES + 8;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MOVE_CHUNK = 64 * 1024;
+
+    private final File file;
+    private final AssetRegistry registry;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private MappedHoldingList holdings;
+    private final CoinTotals totals = new CoinTotals();
+
+    private volatile boolean dirty;
+    private ScheduledExecutorService flusher;
+    private boolean closed; // The shutdown hook calls close again
+
+    public MappedHoldingStore(AssetRegistry registry) {
+        this(new File(FILE_NAME), registry);
+    }
+
+    public MappedHoldingStore(File file, AssetRegistry registry) {
+        this.file = file;
+        this.registry = registry;
+    }
+
+    @Override
+    public List<CryptoHolding> load() throws IOException {
+        boolean fresh = !file.exists() || file.length() < HEADER_SIZE;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int count = 0;
+        if (fresh) {
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, VERSION);
+            buffer.putInt(COUNT_OFFSET, 0);
+        } else {
+            int records = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+            map(records);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a holdings file: " + file);
+            }
+            short version = buffer.getShort(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported holdings file version " + version);
+            }
+            count = buffer.getInt(COUNT_OFFSET);
+            if (count < 0 || count > records) {
+                throw corrupt("count " + count + " but room for " + records + " records");
+            }
+            boolean clean = buffer.getShort(CLEAN_OFFSET) == 1 && version == VERSION;
+            if (version < VERSION) {
+                migrateDisplayNames(count);
+            }
+            buffer.putShort(CLEAN_OFFSET, (short) 0); // Until close saves the summary again
+            buffer.force();
+            if (!clean || !readSummary(count)) {
+                sumRecords(count);
+            }
+        }
+        holdings = new MappedHoldingList(count);
+        if (fresh) {
+            importLogStore();
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mapped-holding-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "mapped-holding-shutdown"));
+        return holdings;
+    }
+
+    /** Copies holdings over from the default log store when switching modes. */
+    private void importLogStore() throws IOException {
+        File dir = file.getParentFile();
+        if (!new File(dir, LogHoldingStore.FILE_NAME).exists()
+                && !new File(dir, LogHoldingStore.LEGACY_FILE_NAME).exists()) {
+            return;
+        }
+        LogHoldingStore source = new LogHoldingStore(new File(dir, LogHoldingStore.FILE_NAME), registry);
+        for (CryptoHolding holding : source.load()) {
+            add(holding);
+        }
+        source.close();
+    }
+
+    /** Reads the totals saved by the last close; false if missing or not for these records. */
+    private boolean readSummary(int count) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(summaryFile())))) {
+            if (in.readInt() != MAGIC || in.readInt() != count) {
+                return false;
+            }
+            int coins = in.readInt();
+            for (int i = 0; i < coins; i++) {
+                String coinId = registry.canonicalId(in.readUTF());
+                double amount = in.readDouble();
+                int lots = in.readInt();
+                if (lots <= 0) {
+                    throw new IOException("Bad lot count " + lots);
+                }
+                totals.add(coinId, amount, lots);
+            }
+            if (totals.lotCount() == count) {
+                return true;
+            }
+        } catch (IOException ex) {
+            System.err.println("Ignoring holdings summary " + summaryFile() + ": " + ex);
+        }
+        totals.clear();
+        return false;
+    }
+
+    private void sumRecords(int count) throws IOException {
+        for (int index = 0; index < count; index++) {
+            totals.add(registry.canonicalId(readId(index)), buffer.getDouble(offset(index) + 2 + ID_BYTES), 1);
+        }
+    }
+
+    private void writeSummary() throws IOException {
+        HoldingsSnapshot snapshot = totals.snapshot();
+        File tmp = new File(summaryFile().getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(holdings.size());
+            out.writeInt(snapshot.amounts.size());
+            for (Map.Entry<String, Double> coin : snapshot.amounts.entrySet()) {
+                out.writeUTF(coin.getKey());
+                out.writeDouble(coin.getValue());
+                out.writeInt(snapshot.lotCount(coin.getKey()));
+            }
+        }
+        Files.move(tmp.toPath(), summaryFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File summaryFile() {
+        return new File(file.getPath() + ".sum");
+    }
+
+    @Override
+    public void add(CryptoHolding holding) {
+        int index = holdings.size();
+        if (index == capacity) {
+            try {
+                map(capacity * 2);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Could not grow " + file, ex);
+            }
+        }
+        writeRecord(index, holding);
+        holdings.inserted(holding);
+        totals.add(holding.coinId, holding.amount, 1);
+        buffer.putInt(COUNT_OFFSET, holdings.size());
+        dirty = true;
+    }
+
+    @Override
+    public void update(int index, double amount) {
+        CryptoHolding holding = holdings.get(index);
+        totals.add(holding.coinId, amount - holding.amount, 0);
+        holding.amount = amount;
+        buffer.putDouble(offset(index) + 2 + ID_BYTES, amount);
+        dirty = true;
+    }
+
+    @Override
+    public void remove(int index) {
+        CryptoHolding removed = holdings.get(index);
+        totals.add(removed.coinId, -removed.amount, -1);
+        int count = holdings.size();
+        // Shift the following records down one slot, front to back
+        byte[] chunk = new byte[Math.min(MOVE_CHUNK, (count - index - 1) * RECORD_SIZE + 1)];
+        int from = offset(index + 1);
+        int end = offset(count);
+        int to = offset(index);
+        while (from < end) {
+            int length = Math.min(chunk.length, end - from);
+            ByteBuffer source = buffer.duplicate();
+            source.position(from);
+            source.get(chunk, 0, length);
+            ByteBuffer target = buffer.duplicate();
+            target.position(to);
+            target.put(chunk, 0, length);
+            from += length;
+            to += length;
+        }
+        holdings.removed(index);
+        buffer.putInt(COUNT_OFFSET, holdings.size());
+        dirty = true;
+    }
+
+    @Override
+    public HoldingsSnapshot totals() {
+        return totals.snapshot();
+    }
+
+    /** Compares stored ids without keeping decoded rows of other coins. */
+    @Override
+    public List<CryptoHolding> lotsOf(String coinId) {
+        List<CryptoHolding> lots = new ArrayList<>();
+        for (int index = 0; holdings != null && index < holdings.size(); index++) {
+            try {
+                if (registry.canonicalId(readId(index)).equals(coinId)) {
+                    lots.add(holdings.get(index));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return lots;
+    }
+
+    /** Forces the records and saves the per-coin summary. Safe to call more than once. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        if (holdings == null) {
+            return; // Never loaded
+        }
+        try {
+            writeSummary();
+            buffer.putShort(CLEAN_OFFSET, (short) 1);
+            buffer.force();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private synchronized void flush() {
+        if (dirty && buffer != null) {
+            dirty = false;
+            buffer.force();
+        }
+    }
+
+    private synchronized void map(int records) throws IOException {
+        capacity = Math.max(records, INITIAL_CAPACITY);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private void writeRecord(int index, CryptoHolding holding) {
+        writeId(index, holding.coinId);
+        buffer.putDouble(offset(index) + 2 + ID_BYTES, holding.amount);
+    }
+
+    private void writeId(int index, String coinId) {
+        byte[] id = coinId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > ID_BYTES) {
+            throw new IllegalArgumentException("Coin id too long for mapped storage: " + coinId);
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset(index));
+        record.putShort((short) id.length);
+        record.put(id);
+    }
+
+    private String readId(int index) throws IOException {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset(index));
+        short length = record.getShort();
+        if (length < 0 || length > ID_BYTES) {
+            throw corrupt("id length " + length + " in record " + index);
+        }
+        byte[] id = new byte[length];
+        record.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private IOException corrupt(String detail) {
+        return new IOException("Corrupt holdings file " + file + ": " + detail);
+    }
+
+    private CryptoHolding readRecord(int index) throws IOException {
+        double amount = buffer.getDouble(offset(index) + 2 + ID_BYTES);
+        CryptoHolding holding = new CryptoHolding(registry.canonicalId(readId(index)), amount);
+        holding.index = index;
+        return holding;
+    }
+
+    private void migrateDisplayNames(int count) throws IOException {
+        for (int index = 0; index < count; index++) {
+            writeId(index, registry.canonicalId(readId(index)));
+        }
+        buffer.putShort(4, VERSION);
+        dirty = true;
+    }
+
+    /**
+     * Lazy view over the mapped records. Decoded holdings are kept so that
+     * prices set on them stick; rows that were never asked for stay on disk.
+     */
+    private final class MappedHoldingList extends AbstractList<CryptoHolding> implements RandomAccess {
+        private CryptoHolding[] decoded;
+        private int size;
+
+        MappedHoldingList(int size) {
+            this.size = size;
+            this.decoded = new CryptoHolding[Math.max(size, 16)];
+        }
+
+        @Override
+        public CryptoHolding get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            CryptoHolding holding = decoded[index];
+            if (holding == null) {
+                try {
+                    holding = readRecord(index);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex); // Rows are decoded on demand, after load returned
+                }
+                decoded[index] = holding;
+            }
+            return holding;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void inserted(CryptoHolding holding) {
+            if (size == decoded.length) {
+                decoded = Arrays.copyOf(decoded, size * 2);
+            }
+            holding.index = size;
+            decoded[size++] = holding;
+            modCount++;
+        }
+
+        void removed(int index) {
+            System.arraycopy(decoded, index + 1, decoded, index, size - index - 1);
+            decoded[--size] = null;
+            for (int i = index; i < size; i++) {
+                if (decoded[i] != null) {
+                    decoded[i].index = i;
+                }
+            }
+            modCount++;
+        }
+    }
+}
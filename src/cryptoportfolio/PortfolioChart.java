@@ -0,0 +1,310 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Chart of the portfolio value over the last day, week, month or year.
+ *
+ * Choosing a range or changing holdings rebuilds the series once, off the
+ * EDT, from {@link PriceHistory}. Changes made while a rebuild runs are
+ * merged into one more rebuild after it. After that every new total is
+ * folded into the last minute of the series instead of rebuilding it.
+ *
+ * Drawing is decimated to one column per pixel holding the min, max,
+ * first and last value of the points that fall into it, so a series of any
+ * length draws in time proportional to the width. Columns are cached and
+ * only those at or after the first changed point are recomputed; the time
+ * axis moves in steps of 1/64 of the range so a live update normally
+ * touches only the last column.
+ *
+ * All methods run on the EDT.
+ */
+class PortfolioChart extends JPanel {
+
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final int AXIS_STEPS = 64;
+    private static final int PADDING = 8;
+
+    enum Range {
+        DAY("1D", PortfolioChart.DAY),
+        WEEK("1W", 7 * PortfolioChart.DAY),
+        MONTH("1M", 30 * PortfolioChart.DAY),
+        YEAR("1Y", 365 * PortfolioChart.DAY);
+
+        final String label;
+        final long span;
+
+        Range(String label, long span) {
+            this.label = label;
+            this.span = span;
+        }
+    }
+
+    private final PriceHistory history;
+    private final Plot plot = new Plot();
+    private final Map<Range, JButton> rangeButtons = new HashMap<>();
+
+    private Range range = Range.DAY;
+    private Map<String, Double> amounts = Collections.emptyMap();
+    private PriceSeries series = new PriceSeries();
+    private boolean rebuilding; // A rebuild is running on the I/O executor
+    private boolean rebuildPending; // Range or holdings changed while it ran
+    private DisplayCurrency currency = DisplayCurrency.USD;
+
+    PortfolioChart(PriceHistory history) {
+        super(new BorderLayout());
+        this.history = history;
+        setBackground(Theme.BACKGROUND);
+        setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        buttons.setBackground(Theme.BACKGROUND);
+        for (Range choice : Range.values()) {
+            JButton button = new JButton(choice.label);
+            button.setFont(Theme.BUTTON_FONT);
+            button.setForeground(Theme.TEXT);
+            button.setFocusPainted(false);
+            button.setBorderPainted(false);
+            button.setOpaque(true);
+            button.addActionListener(e -> setRange(choice));
+            rangeButtons.put(choice, button);
+            buttons.add(button);
+        }
+        showSelectedRange();
+
+        plot.setPreferredSize(new Dimension(0, 140));
+        add(buttons, BorderLayout.NORTH);
+        add(plot, BorderLayout.CENTER);
+    }
+
+    void setRange(Range range) {
+        if (range != this.range) {
+            this.range = range;
+            showSelectedRange();
+            rebuild();
+        }
+    }
+
+    /** Sets the held amount per coin id, which must not change afterwards, and rebuilds the series. */
+    void setHoldings(Map<String, Double> amounts) {
+        this.amounts = amounts;
+        rebuild();
+    }
+
+    /** Folds the current total into the series; within a minute the latest total wins. */
+    void addValue(long time, double value) {
+        long minute = Math.floorDiv(time, MINUTE) * MINUTE;
+        int last = series.size - 1;
+        if (last >= 0 && minute < series.times[last]) {
+            return;
+        }
+        series.put(minute, value);
+        plot.changedFrom(last >= 0 && minute == series.times[last] ? last : series.size - 1);
+    }
+
+    /** Labels values in another currency; the series itself stays in USD. */
+    void setCurrency(DisplayCurrency currency) {
+        this.currency = currency;
+        plot.repaint();
+    }
+
+    private void showSelectedRange() {
+        for (Map.Entry<Range, JButton> entry : rangeButtons.entrySet()) {
+            entry.getValue().setBackground(entry.getKey() == range ? Theme.ACCENT : Theme.SELECTION);
+        }
+    }
+
+    private void rebuild() {
+        if (rebuilding) {
+            rebuildPending = true;
+            return;
+        }
+        rebuilding = true;
+        Map<String, Double> held = amounts;
+        long to = System.currentTimeMillis() + MINUTE;
+        long from = to - range.span;
+        IoExecutor.shared().execute(() -> {
+            PriceSeries built = null;
+            try {
+                built = PortfolioValueSeries.build(held, history.query(held.keySet(), from, to));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            PriceSeries finished = built;
+            SwingUtilities.invokeLater(() -> rebuilt(finished));
+        });
+    }
+
+    // A result that is already out of date is dropped for the pending rebuild
+    private void rebuilt(PriceSeries built) {
+        rebuilding = false;
+        if (rebuildPending) {
+            rebuildPending = false;
+            rebuild();
+        } else if (built != null) {
+            series = built;
+            plot.changedFrom(0);
+        }
+    }
+
+    /** Draws the series from per-pixel columns. */
+    private final class Plot extends JComponent {
+
+        private double[] low = new double[0];
+        private double[] high = new double[0];
+        private double[] first = new double[0];
+        private double[] last = new double[0];
+        private long axisFrom;
+        private long axisTo;
+        private int dirtyFrom; // First series index not reflected in the columns
+
+        void changedFrom(int index) {
+            dirtyFrom = Math.min(dirtyFrom, Math.max(0, index));
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(Theme.BACKGROUND);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            int width = getWidth() - 2 * PADDING;
+            int height = getHeight() - 2 * PADDING;
+            if (width <= 0 || height <= 0) {
+                return;
+            }
+            decimate(width);
+
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int firstColumn = -1;
+            int lastColumn = -1;
+            for (int c = 0; c < width; c++) {
+                if (!Double.isNaN(low[c])) {
+                    min = Math.min(min, low[c]);
+                    max = Math.max(max, high[c]);
+                    if (firstColumn < 0) {
+                        firstColumn = c;
+                    }
+                    lastColumn = c;
+                }
+            }
+
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setFont(Theme.BUTTON_FONT);
+            FontMetrics fm = g2d.getFontMetrics();
+            if (firstColumn < 0) {
+                g2d.setColor(Theme.MUTED);
+                g2d.drawString("No price history yet", PADDING, PADDING + fm.getAscent());
+                return;
+            }
+            if (max == min) {
+                max += 1;
+                min -= 1;
+            }
+
+            double start = first[firstColumn];
+            double end = last[lastColumn];
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2d.setColor(end >= start ? Theme.GAIN : Theme.LOSS);
+            int previousX = -1;
+            int previousY = 0;
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                if (Double.isNaN(low[c])) {
+                    continue;
+                }
+                int x = PADDING + c;
+                if (previousX >= 0) {
+                    g2d.drawLine(previousX, previousY, x, y(first[c], min, max, height));
+                }
+                g2d.drawLine(x, y(low[c], min, max, height), x, y(high[c], min, max, height));
+                previousX = x;
+                previousY = y(last[c], min, max, height);
+            }
+
+            String change = start == 0 ? "" : String.format(Locale.ROOT, "%+.2f%%", (end - start) / start * 100);
+            g2d.drawString(change, getWidth() - PADDING - fm.stringWidth(change), PADDING + fm.getAscent());
+            g2d.setColor(Theme.TEXT);
+            g2d.drawString(currency.format(max), PADDING, PADDING + fm.getAscent());
+            g2d.drawString(currency.format(min), PADDING, getHeight() - PADDING - fm.getDescent());
+        }
+
+        private int y(double value, double min, double max, int height) {
+            return PADDING + (int) Math.round((max - value) / (max - min) * (height - 1));
+        }
+
+        /** Brings the columns up to date with the series. */
+        private void decimate(int width) {
+            long step = range.span / AXIS_STEPS;
+            long to = Math.floorDiv(System.currentTimeMillis(), step) * step + step;
+            if (width != low.length || to != axisTo || to - axisFrom != range.span) {
+                low = new double[width];
+                high = new double[width];
+                first = new double[width];
+                last = new double[width];
+                Arrays.fill(low, Double.NaN);
+                axisTo = to;
+                axisFrom = to - range.span;
+                dirtyFrom = 0;
+            }
+            if (dirtyFrom >= series.size) {
+                dirtyFrom = Integer.MAX_VALUE;
+                return;
+            }
+
+            // Clear the columns from the first changed point on, then refill them
+            int fromColumn = Math.max(0, column(series.times[dirtyFrom], width));
+            Arrays.fill(low, Math.min(fromColumn, width), width, Double.NaN);
+            int i = series.indexAtOrAfter(axisFrom + (long) ((double) fromColumn / width * (axisTo - axisFrom)));
+            while (i > 0 && column(series.times[i - 1], width) >= fromColumn) {
+                i--;
+            }
+            for (; i < series.size; i++) {
+                int c = column(series.times[i], width);
+                if (c < fromColumn) {
+                    continue;
+                }
+                if (c >= width) {
+                    break;
+                }
+                double value = series.prices[i];
+                if (Double.isNaN(low[c])) {
+                    low[c] = value;
+                    high[c] = value;
+                    first[c] = value;
+                } else {
+                    low[c] = Math.min(low[c], value);
+                    high[c] = Math.max(high[c], value);
+                }
+                last[c] = value;
+            }
+            dirtyFrom = Integer.MAX_VALUE;
+        }
+
+        private int column(long time, int width) {
+            return (int) Math.floor((double) (time - axisFrom) / (axisTo - axisFrom) * width);
+        }
+    }
+}
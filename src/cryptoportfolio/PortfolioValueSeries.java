@@ -0,0 +1,72 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Builds the value of the current holdings over time from per-coin price
+ * history.
+ *
+ * The coin series are merged in time order while a running total is kept:
+ * each price point only adds {@code amount * (price - previousPrice)} for
+ * its own coin, so the cost is one step per stored point however many
+ * holdings there are. A coin is valued at its first known price until its
+ * history starts, so coins added later do not show up as a jump.
+ */
+final class PortfolioValueSeries {
+
+    private PortfolioValueSeries() {
+    }
+
+    /**
+     * @param amounts held amount per coin id
+     * @param prices price history per coin id, as returned by {@link PriceHistory#query}
+     */
+    static PriceSeries build(Map<String, Double> amounts, Map<String, PriceSeries> prices) {
+        PriceSeries[] series = new PriceSeries[amounts.size()];
+        double[] held = new double[amounts.size()];
+        int coins = 0;
+        int points = 0;
+        for (Map.Entry<String, Double> entry : amounts.entrySet()) {
+            PriceSeries coin = prices.get(entry.getKey());
+            if (coin != null && coin.size > 0) {
+                series[coins] = coin;
+                held[coins] = entry.getValue();
+                points += coin.size;
+                coins++;
+            }
+        }
+
+        int[] next = new int[coins];
+        double[] last = new double[coins];
+        double total = 0;
+        for (int c = 0; c < coins; c++) {
+            last[c] = series[c].prices[0];
+            total += held[c] * last[c];
+        }
+
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, coins),
+                (a, b) -> Long.compare(series[a].times[next[a]], series[b].times[next[b]]));
+        for (int c = 0; c < coins; c++) {
+            queue.add(c);
+        }
+        PriceSeries value = new PriceSeries(points);
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            PriceSeries coin = series[c];
+            int i = next[c];
+            total += held[c] * (coin.prices[i] - last[c]);
+            last[c] = coin.prices[i];
+            value.put(coin.times[i], total); // Coins sharing a timestamp collapse into one point
+            if (++next[c] < coin.size) {
+                queue.add(c);
+            }
+        }
+        return value;
+    }
+}
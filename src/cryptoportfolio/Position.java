@@ -0,0 +1,146 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Open lots and realized result of one coin, updated one trade at a time.
+ *
+ * Buys and incoming transfers open a lot. Disposals consume lots from the
+ * oldest end (FIFO), the newest end (LIFO), or from a single pooled lot
+ * (AVERAGE). Quantity and remaining cost are kept as running totals, so
+ * unrealized P&L at any price is a multiply and a subtract. Amounts sold
+ * beyond the open lots have no known cost and are left out of the result.
+ */
+final class Position {
+
+    enum Method {
+        FIFO, LIFO, AVERAGE
+    }
+
+    /** Coins still held from one acquisition, with their remaining cost. */
+    static final class Lot {
+        final long timestamp;
+        double amount;
+        double cost;
+
+        Lot(long timestamp, double amount, double cost) {
+            this.timestamp = timestamp;
+            this.amount = amount;
+            this.cost = cost;
+        }
+    }
+
+    // Lots smaller than this are rounding left-overs
+    private static final double DUST = 1e-12;
+
+    private final Method method;
+    private final ArrayDeque<Lot> lots = new ArrayDeque<>();
+    private double quantity;
+    private double cost;
+    private double realized;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    Position(Method method) {
+        this.method = method;
+    }
+
+    void apply(Trade trade) {
+        switch (trade.type) {
+            case BUY:
+                open(trade.timestamp, trade.amount, trade.amount * trade.priceUSD + trade.feeUSD);
+                break;
+            case TRANSFER_IN:
+                open(trade.timestamp, trade.amount, trade.amount * trade.priceUSD);
+                realized -= trade.feeUSD;
+                break;
+            case SELL: {
+                double matched = Math.min(trade.amount, quantity);
+                realized += matched * trade.priceUSD - close(matched) - trade.feeUSD;
+                break;
+            }
+            case TRANSFER_OUT:
+                close(Math.min(trade.amount, quantity));
+                realized -= trade.feeUSD;
+                break;
+            case FEE:
+                realized -= close(Math.min(trade.amount, quantity)) + trade.feeUSD;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown trade type " + trade.type);
+        }
+        lastTimestamp = Math.max(lastTimestamp, trade.timestamp);
+    }
+
+    double quantity() {
+        return quantity;
+    }
+
+    double realized() {
+        return realized;
+    }
+
+    double unrealized(double priceUSD) {
+        return quantity * priceUSD - cost;
+    }
+
+    /** Timestamp of the latest trade applied, so callers can spot late ones. */
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /** Copies of the open lots, oldest first. */
+    List<Lot> lots() {
+        List<Lot> copy = new ArrayList<>(lots.size());
+        for (Lot lot : lots) {
+            copy.add(new Lot(lot.timestamp, lot.amount, lot.cost));
+        }
+        return copy;
+    }
+
+    private void open(long timestamp, double amount, double lotCost) {
+        quantity += amount;
+        cost += lotCost;
+        if (method == Method.AVERAGE && !lots.isEmpty()) {
+            Lot pool = lots.peekFirst();
+            pool.amount += amount;
+            pool.cost += lotCost;
+        } else {
+            lots.addLast(new Lot(timestamp, amount, lotCost));
+        }
+    }
+
+    /** Removes the amount from the lots and returns the cost it carried. */
+    private double close(double amount) {
+        double removedCost = 0;
+        double remaining = amount;
+        Iterator<Lot> order = method == Method.LIFO ? lots.descendingIterator() : lots.iterator();
+        while (remaining > DUST && order.hasNext()) {
+            Lot lot = order.next();
+            double taken = Math.min(lot.amount, remaining);
+            double takenCost = lot.cost * (taken / lot.amount);
+            lot.amount -= taken;
+            lot.cost -= takenCost;
+            removedCost += takenCost;
+            remaining -= taken;
+            if (lot.amount <= DUST) {
+                order.remove();
+            }
+        }
+        quantity -= amount - remaining;
+        cost -= removedCost;
+        if (lots.isEmpty()) {
+            // No drift left behind once everything is sold
+            quantity = 0;
+            cost = 0;
+        }
+        return removedCost;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latest price per coin id, shared by every holding of that coin.
+ *
+ * The cache holds an immutable snapshot map. Fetchers parse into a
+ * {@link Batch} and commit it once the whole refresh is done, which
+ * publishes a new snapshot in a single volatile write: readers never see a
+ * refresh half applied and never take a lock. A refresh costs one entry
+ * per distinct coin however many lots are held. Entries older than the
+ * time-to-live are reported as stale and picked up by the next refresh.
+ * Listeners hear about every coin whose price or change actually moved.
+ */
+class PriceCache {
+
+    /** Immutable price point for one coin. */
+    static final class Entry {
+        final double priceUSD;
+        final double change24h;
+        final long timestamp;
+
+        Entry(double priceUSD, double change24h, long timestamp) {
+            this.priceUSD = priceUSD;
+            this.change24h = change24h;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /** Told which coins changed, on the thread that committed them. */
+    interface Listener {
+        void pricesChanged(Collection<String> ids);
+    }
+
+    /**
+     * Prices collected during one refresh. Safe to fill from several fetch
+     * threads; nothing is visible until {@link #commit()}.
+     */
+    final class Batch implements PriceConsumer {
+        private final Map<String, Entry> pending = new HashMap<>();
+        private final long timestamp = System.currentTimeMillis();
+
+        @Override
+        public synchronized void accept(String id, double priceUSD, double change24h) {
+            pending.put(id, new Entry(priceUSD, change24h, timestamp));
+        }
+
+        /** Publishes every collected price as one new snapshot. */
+        public synchronized void commit() {
+            publish(pending);
+        }
+    }
+
+    private volatile Map<String, Entry> entries = Collections.emptyMap();
+    private final long ttlMillis;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public PriceCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private synchronized void publish(Map<String, Entry> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        Map<String, Entry> next = new HashMap<>(entries);
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Entry> update : updates.entrySet()) {
+            Entry previous = next.put(update.getKey(), update.getValue());
+            Entry entry = update.getValue();
+            if (previous == null || Double.compare(previous.priceUSD, entry.priceUSD) != 0
+                    || Double.compare(previous.change24h, entry.change24h) != 0) {
+                changed.add(update.getKey());
+            }
+        }
+        entries = Collections.unmodifiableMap(next);
+        if (!changed.isEmpty()) {
+            for (Listener listener : listeners) {
+                listener.pricesChanged(changed);
+            }
+        }
+    }
+
+    /**
+     * Returns the current snapshot. It never changes, so several lookups
+     * against it all see the same refresh.
+     */
+    public Map<String, Entry> snapshot() {
+        return entries;
+    }
+
+    /** Returns the cached entry, or null if the coin was never priced. */
+    public Entry get(String id) {
+        return entries.get(id);
+    }
+
+    public double price(String id) {
+        Entry entry = entries.get(id);
+        return entry == null ? 0.0 : entry.priceUSD;
+    }
+
+    public boolean isStale(String id, long now) {
+        Entry entry = entries.get(id);
+        return entry == null || now - entry.timestamp >= ttlMillis;
+    }
+
+    /** Returns the ids among the given ones that need refreshing. */
+    public List<String> staleIds(Collection<String> ids) {
+        long now = System.currentTimeMillis();
+        List<String> stale = new ArrayList<>();
+        for (String id : ids) {
+            if (isStale(id, now)) {
+                stale.add(id);
+            }
+        }
+        return stale;
+    }
+}
@@ -0,0 +1,14 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+/**
+ * Receives prices as they are parsed, one coin at a time.
+ */
+@FunctionalInterface
+interface PriceConsumer {
+    void accept(String id, double priceUSD, double change24h);
+}
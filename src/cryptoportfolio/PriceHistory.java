@@ -0,0 +1,433 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Local price history, fed by every price the {@link PriceCache} publishes.
+ *
+ * History is kept in three tiers. Recent prices are kept at one point per
+ * coin per minute, in one {@link HistorySegment} per day. Minute segments
+ * older than two days are downsampled to hourly points, and hourly segments
+ * older than 90 days to daily points; the finer segment is deleted once
+ * the coarser one is written, so every instant lives in exactly one tier.
+ * Segment files are named after the start of their window, so a range
+ * query opens only the files overlapping it.
+ *
+ * The current day is kept in memory and journalled to {@code journal.log}
+ * every few seconds; when the day is over it is sealed into a segment.
+ * History is best effort: an unflushed journal tail may be lost on a crash.
+ *
+ * The cache only reports coins whose price moved, so a point is stored
+ * when a price changes, not on every fetch, and a price holds until the
+ * coin's next point. Queries fill forward: a coin with no point at the
+ * start of the range gets its last earlier price there.
+ */
+class PriceHistory implements PriceCache.Listener {
+
+    static final String DIR_NAME = "history";
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static final String JOURNAL_NAME = "journal.log";
+    private static final long FLUSH_SECONDS = 5;
+
+    /** One resolution: point spacing, segment window and how long it is kept. */
+    private enum Tier {
+        MINUTES("1m", MINUTE, DAY, 2 * DAY),
+        HOURS("1h", HOUR, 32 * DAY, 90 * DAY),
+        DAYS("1d", DAY, 512 * DAY, Long.MAX_VALUE);
+
+        final String dirName;
+        final long resolution;
+        final long span;
+        final long retention;
+
+        Tier(String dirName, long resolution, long span, long retention) {
+            this.dirName = dirName;
+            this.resolution = resolution;
+            this.span = span;
+            this.retention = retention;
+        }
+
+        long windowStart(long time) {
+            return Math.floorDiv(time, span) * span;
+        }
+    }
+
+    private final File dir;
+    private final PriceCache priceCache;
+    private final LongSupplier clock;
+    private final ReadWriteLock filesLock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService writer;
+
+    // Guarded by this: the open minute window and points not yet journalled
+    private long openWindow;
+    private Map<String, PriceSeries> open = new HashMap<>();
+    private List<Point> unjournalled = new ArrayList<>();
+
+    PriceHistory(File dir, PriceCache priceCache) {
+        this(dir, priceCache, System::currentTimeMillis);
+    }
+
+    /** Uses the given clock for the open day and compaction, e.g. a fixed one in tests. */
+    PriceHistory(File dir, PriceCache priceCache, LongSupplier clock) {
+        this.dir = dir;
+        this.priceCache = priceCache;
+        this.clock = clock;
+    }
+
+    /** Replays the journal, seals and compacts old data, and starts the writer. */
+    void start() throws IOException {
+        filesLock.writeLock().lock();
+        try {
+            openWindow = Tier.MINUTES.windowStart(clock.getAsLong());
+            Map<Long, Map<String, PriceSeries>> replayed = replayJournal();
+            for (Map.Entry<Long, Map<String, PriceSeries>> window : replayed.entrySet()) {
+                if (window.getKey() == openWindow) {
+                    open = window.getValue();
+                } else {
+                    merge(Tier.MINUTES, window.getKey(), window.getValue());
+                }
+            }
+            rewriteJournal(open);
+            compact(clock.getAsLong());
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "price-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "price-history-shutdown"));
+    }
+
+    @Override
+    public void pricesChanged(Collection<String> ids) {
+        for (String id : ids) {
+            PriceCache.Entry entry = priceCache.get(id);
+            if (entry != null) {
+                record(id, entry.timestamp, entry.priceUSD);
+            }
+        }
+    }
+
+    /** Adds a price point; within a minute the latest price wins. */
+    synchronized void record(String id, long timestamp, double priceUSD) {
+        long time = Math.floorDiv(timestamp, MINUTE) * MINUTE;
+        if (time < openWindow) {
+            return; // Late point for an already sealed day
+        }
+        // Points past midnight stay here until the writer seals the old day
+        open.computeIfAbsent(id, key -> new PriceSeries()).put(time, priceUSD);
+        unjournalled.add(new Point(id, time, priceUSD));
+    }
+
+    /**
+     * Returns the prices of a coin with {@code from <= time < to}, at the
+     * finest resolution still kept for each part of the range, plus its
+     * last earlier price at {@code from} when it has no point there.
+     */
+    PriceSeries query(String id, long from, long to) throws IOException {
+        return query(Collections.singleton(id), from, to).getOrDefault(id, new PriceSeries(1));
+    }
+
+    /** Like {@link #query(String, long, long)} for several coins at once. */
+    Map<String, PriceSeries> query(Collection<String> ids, long from, long to) throws IOException {
+        Map<String, PriceSeries> result = new HashMap<>();
+        filesLock.readLock().lock();
+        try {
+            // Nothing is stored before the epoch or in the future
+            long start = Math.max(from, 0);
+            long end = Math.min(to, clock.getAsLong() + DAY);
+            for (Tier tier : Tier.values()) {
+                for (long window = tier.windowStart(start); window < end; window += tier.span) {
+                    File file = segmentFile(tier, window);
+                    if (!file.exists()) {
+                        continue;
+                    }
+                    for (Map.Entry<String, PriceSeries> entry : HistorySegment.read(file, ids).entrySet()) {
+                        result.computeIfAbsent(entry.getKey(), key -> new PriceSeries())
+                                .putAll(entry.getValue().slice(from, to));
+                    }
+                }
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+        synchronized (this) {
+            for (String id : ids) {
+                PriceSeries recent = open.get(id);
+                if (recent != null) {
+                    result.computeIfAbsent(id, key -> new PriceSeries()).putAll(recent.slice(from, to));
+                }
+            }
+        }
+        if (from > 0 && from < to) {
+            fillForward(ids, from, result);
+        }
+        return result;
+    }
+
+    /** Puts each coin's last price before {@code from} at {@code from}, where it has no point there. */
+    private void fillForward(Collection<String> ids, long from, Map<String, PriceSeries> result) throws IOException {
+        Set<String> needed = new HashSet<>();
+        for (String id : ids) {
+            PriceSeries series = result.get(id);
+            if (series == null || series.size == 0 || series.times[0] > from) {
+                needed.add(id);
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<String, PriceSeries> entry : open.entrySet()) {
+                if (needed.contains(entry.getKey())) {
+                    carry(entry.getKey(), entry.getValue(), from, needed, result);
+                }
+            }
+        }
+        filesLock.readLock().lock();
+        try {
+            // Finer tiers hold newer history than coarser ones, and later windows newer than earlier
+            for (Tier tier : Tier.values()) {
+                File[] files = new File(dir, tier.dirName).listFiles((d, name) -> name.endsWith(".seg"));
+                if (files == null) {
+                    continue;
+                }
+                List<Long> windows = new ArrayList<>();
+                for (File file : files) {
+                    long window = Long.parseLong(file.getName().substring(0, file.getName().length() - 4));
+                    if (window < from) {
+                        windows.add(window);
+                    }
+                }
+                windows.sort(Collections.reverseOrder());
+                for (long window : windows) {
+                    if (needed.isEmpty()) {
+                        return;
+                    }
+                    for (Map.Entry<String, PriceSeries> entry
+                            : HistorySegment.read(segmentFile(tier, window), needed).entrySet()) {
+                        carry(entry.getKey(), entry.getValue(), from, needed, result);
+                    }
+                }
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+    private static void carry(String id, PriceSeries earlier, long from, Set<String> needed,
+            Map<String, PriceSeries> result) {
+        int index = earlier.indexAtOrAfter(from);
+        if (index > 0) {
+            needed.remove(id);
+            result.computeIfAbsent(id, key -> new PriceSeries()).put(from, earlier.prices[index - 1]);
+        }
+    }
+
+    // Writer thread, and tests driving the clock
+    void flush() {
+        // Sealing moves points from memory to a file; queries must not see the gap
+        filesLock.writeLock().lock();
+        try {
+            List<Point> points;
+            Map<String, PriceSeries> sealed = null;
+            long sealedWindow = 0;
+            Map<String, PriceSeries> snapshot = null;
+            synchronized (this) {
+                points = unjournalled;
+                unjournalled = new ArrayList<>();
+                long current = Tier.MINUTES.windowStart(clock.getAsLong());
+                if (current != openWindow) {
+                    sealedWindow = openWindow;
+                    sealed = split(open, current);
+                    openWindow = current;
+                    snapshot = new HashMap<>();
+                    for (Map.Entry<String, PriceSeries> entry : open.entrySet()) {
+                        snapshot.put(entry.getKey(), entry.getValue().slice(Long.MIN_VALUE, Long.MAX_VALUE));
+                    }
+                }
+            }
+            if (sealed != null) {
+                merge(Tier.MINUTES, sealedWindow, sealed);
+                rewriteJournal(snapshot);
+                compact(clock.getAsLong());
+            } else if (!points.isEmpty()) {
+                appendJournal(points);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the points before {@code current} out of {@link #open} and
+     * returns them.
+     */
+    private Map<String, PriceSeries> split(Map<String, PriceSeries> series, long current) {
+        Map<String, PriceSeries> before = new HashMap<>();
+        Map<String, PriceSeries> after = new HashMap<>();
+        for (Map.Entry<String, PriceSeries> entry : series.entrySet()) {
+            PriceSeries points = entry.getValue();
+            before.put(entry.getKey(), points.slice(Long.MIN_VALUE, current));
+            PriceSeries rest = points.slice(current, Long.MAX_VALUE);
+            if (rest.size > 0) {
+                after.put(entry.getKey(), rest);
+            }
+        }
+        open = after;
+        return before;
+    }
+
+    /** Downsamples segments past their tier's retention into the next tier. */
+    private void compact(long now) throws IOException {
+        Tier[] tiers = Tier.values();
+        for (int t = 0; t < tiers.length - 1; t++) {
+            Tier tier = tiers[t];
+            Tier coarser = tiers[t + 1];
+            File[] files = new File(dir, tier.dirName).listFiles((d, name) -> name.endsWith(".seg"));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                long window = Long.parseLong(file.getName().substring(0, file.getName().length() - 4));
+                if (window + tier.span > now - tier.retention) {
+                    continue;
+                }
+                Map<String, PriceSeries> downsampled = new HashMap<>();
+                for (Map.Entry<String, PriceSeries> entry : HistorySegment.read(file, null).entrySet()) {
+                    downsampled.put(entry.getKey(), entry.getValue().downsample(coarser.resolution));
+                }
+                // The coarser window always contains the finer one
+                merge(coarser, coarser.windowStart(window), downsampled);
+                if (!file.delete()) {
+                    System.err.println("Could not delete compacted history segment " + file);
+                }
+            }
+        }
+    }
+
+    /** Merges points into a tier's segment file. */
+    private void merge(Tier tier, long window, Map<String, PriceSeries> points) throws IOException {
+        File file = segmentFile(tier, window);
+        Map<String, PriceSeries> merged = HistorySegment.read(file, null);
+        for (Map.Entry<String, PriceSeries> entry : points.entrySet()) {
+            PriceSeries downsampled = entry.getValue().downsample(tier.resolution);
+            merged.computeIfAbsent(entry.getKey(), key -> new PriceSeries()).putAll(downsampled);
+        }
+        HistorySegment.write(file, tier.resolution, window, merged);
+    }
+
+    private File segmentFile(Tier tier, long window) {
+        return new File(new File(dir, tier.dirName), window + ".seg");
+    }
+
+    private Map<Long, Map<String, PriceSeries>> replayJournal() throws IOException {
+        Map<Long, Map<String, PriceSeries>> windows = new TreeMap<>();
+        File journal = new File(dir, JOURNAL_NAME);
+        if (!journal.exists()) {
+            return windows;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            while (true) {
+                String id;
+                long time;
+                double price;
+                try {
+                    id = in.readUTF();
+                    time = in.readLong();
+                    price = in.readDouble();
+                } catch (EOFException ex) {
+                    break; // Clean end, or a torn last record
+                }
+                windows.computeIfAbsent(Tier.MINUTES.windowStart(time), key -> new HashMap<>())
+                        .computeIfAbsent(id, key -> new PriceSeries()).put(time, price);
+            }
+        }
+        return windows;
+    }
+
+    private void rewriteJournal(Map<String, PriceSeries> series) throws IOException {
+        List<Point> points = new ArrayList<>();
+        for (Map.Entry<String, PriceSeries> entry : series.entrySet()) {
+            PriceSeries values = entry.getValue();
+            for (int i = 0; i < values.size; i++) {
+                points.add(new Point(entry.getKey(), values.times[i], values.prices[i]));
+            }
+        }
+        File journal = new File(dir, JOURNAL_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(encode(points)));
+        }
+    }
+
+    private void appendJournal(List<Point> points) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(dir, JOURNAL_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(encode(points)));
+        }
+    }
+
+    private static byte[] encode(List<Point> points) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(points.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Point point : points) {
+            out.writeUTF(point.id);
+            out.writeLong(point.time);
+            out.writeDouble(point.price);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Point {
+        final String id;
+        final long time;
+        final double price;
+
+        Point(String id, long time, double price) {
+            this.id = id;
+            this.time = time;
+            this.price = price;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Single-pass parser for CoinGecko {@code simple/price} responses, and for
+ * the {@code exchange_rates} table through {@link #parseRates}.
+ *
+ * The response is walked once, straight from the reader, and every coin's
+ * {@code usd} and {@code usd_24h_change} values are handed to a
+ * {@link PriceConsumer} as soon as its object closes. No tree is built:
+ * keys are matched in a reusable buffer and most numbers are converted
+ * without creating strings. Unknown fields, including nested values, are
+ * skipped.
+ */
+final class PriceJsonParser {
+
+    private static final char[] USD = "usd".toCharArray();
+    private static final char[] USD_CHANGE = "usd_24h_change".toCharArray();
+    private static final char[] RATES = "rates".toCharArray();
+    private static final char[] UNIT = "unit".toCharArray();
+    private static final char[] TYPE = "type".toCharArray();
+    private static final char[] VALUE = "value".toCharArray();
+
+    // Exact powers of ten for the fast number path
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long consumed; // Chars read before the current buffer, for error offsets
+
+    private char[] text = new char[64];
+    private int textLength;
+
+    private PriceJsonParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** Parses a whole response and reports each coin to the consumer. */
+    static void parse(Reader reader, PriceConsumer consumer) throws IOException {
+        new PriceJsonParser(reader).parseResponse(consumer);
+    }
+
+    /** Told about each currency of an {@code exchange_rates} response. */
+    interface RateConsumer {
+        /**
+         * @param unit the currency's symbol, such as {@code "$"} or {@code "BTC"}
+         * @param type {@code fiat}, {@code crypto} or {@code commodity}
+         * @param perBtc how many units one bitcoin is worth
+         */
+        void accept(String code, String unit, String type, double perBtc);
+    }
+
+    /** Parses a whole {@code exchange_rates} response and reports each currency. */
+    static void parseRates(Reader reader, RateConsumer consumer) throws IOException {
+        new PriceJsonParser(reader).parseRatesResponse(consumer);
+    }
+
+    private void parseResponse(PriceConsumer consumer) throws IOException {
+        expect('{');
+        if (peekSkippingWhitespace() == '}') {
+            position++;
+            return;
+        }
+        do {
+            readString();
+            String id = new String(text, 0, textLength);
+            expect(':');
+            if (peekSkippingWhitespace() == '{') {
+                parseCoin(id, consumer);
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void parseCoin(String id, PriceConsumer consumer) throws IOException {
+        double price = Double.NaN;
+        double change = Double.NaN;
+        expect('{');
+        if (peekSkippingWhitespace() == '}') {
+            position++;
+            return;
+        }
+        do {
+            readString();
+            expect(':');
+            if (textEquals(USD)) {
+                price = readNumberOrNull();
+            } else if (textEquals(USD_CHANGE)) {
+                change = readNumberOrNull();
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+
+        if (!Double.isNaN(price)) {
+            consumer.accept(id, price, Double.isNaN(change) ? 0.0 : change);
+        }
+    }
+
+    private void parseRatesResponse(RateConsumer consumer) throws IOException {
+        expect('{');
+        if (peekSkippingWhitespace() == '}') {
+            position++;
+            return;
+        }
+        do {
+            readString();
+            expect(':');
+            if (textEquals(RATES) && peekSkippingWhitespace() == '{') {
+                parseRateTable(consumer);
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void parseRateTable(RateConsumer consumer) throws IOException {
+        expect('{');
+        if (peekSkippingWhitespace() == '}') {
+            position++;
+            return;
+        }
+        do {
+            readString();
+            String code = new String(text, 0, textLength);
+            expect(':');
+            if (peekSkippingWhitespace() == '{') {
+                parseRate(code, consumer);
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void parseRate(String code, RateConsumer consumer) throws IOException {
+        String unit = code.toUpperCase(Locale.ROOT);
+        String type = "";
+        double value = Double.NaN;
+        expect('{');
+        if (peekSkippingWhitespace() == '}') {
+            position++;
+            return;
+        }
+        do {
+            readString();
+            expect(':');
+            if (textEquals(UNIT) && peekSkippingWhitespace() == '"') {
+                readString();
+                unit = new String(text, 0, textLength);
+            } else if (textEquals(TYPE) && peekSkippingWhitespace() == '"') {
+                readString();
+                type = new String(text, 0, textLength);
+            } else if (textEquals(VALUE)) {
+                value = readNumberOrNull();
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+
+        if (value > 0) {
+            consumer.accept(code, unit, type, value);
+        }
+    }
+
+    /** Consumes a ',' and returns true, or consumes the closing char and returns false. */
+    private boolean nextMember(char close) throws IOException {
+        char c = nextSkippingWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw error("Expected ',' or '" + close + "'");
+    }
+
+    private double readNumberOrNull() throws IOException {
+        char c = peekSkippingWhitespace();
+        if (c == 'n') {
+            skipLiteral();
+            return Double.NaN;
+        }
+        return readNumber();
+    }
+
+    private double readNumber() throws IOException {
+        textLength = 0;
+        boolean negative = false;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean exact = true;
+
+        char c = peek();
+        if (c == '-') {
+            negative = true;
+            appendText(next());
+        }
+        while (true) {
+            c = peek();
+            if (c >= '0' && c <= '9') {
+                appendText(next());
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        scale++;
+                    }
+                } else {
+                    exact = false;
+                }
+            } else if (c == '.' && !fraction) {
+                appendText(next());
+                fraction = true;
+            } else if (c == 'e' || c == 'E' || c == '+' || c == '-') {
+                appendText(next());
+                exact = false; // Exponents take the slow path
+            } else {
+                break;
+            }
+        }
+        if (textLength == 0 || (negative && textLength == 1)) {
+            throw error("Expected a number");
+        }
+
+        // Exact when the mantissa fits in 53 bits and the scale is a table power
+        if (exact && mantissa < (1L << 53) && scale < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(text, 0, textLength));
+        } catch (NumberFormatException ex) {
+            throw error("Bad number " + new String(text, 0, textLength));
+        }
+    }
+
+    private void skipValue() throws IOException {
+        char c = peekSkippingWhitespace();
+        switch (c) {
+            case '{':
+            case '[':
+                skipContainer();
+                break;
+            case '"':
+                readString();
+                break;
+            case 't':
+            case 'f':
+            case 'n':
+                skipLiteral();
+                break;
+            default:
+                readNumber();
+                break;
+        }
+    }
+
+    private void skipContainer() throws IOException {
+        int depth = 0;
+        do {
+            char c = next();
+            if (c == '"') {
+                position--;
+                readString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipLiteral() throws IOException {
+        while (Character.isLetter(peek())) {
+            position++;
+        }
+    }
+
+    /** Reads a quoted string into the reusable text buffer. */
+    private void readString() throws IOException {
+        expect('"');
+        textLength = 0;
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                c = next();
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u':
+                        String hex = new String(new char[]{next(), next(), next(), next()});
+                        try {
+                            c = (char) Integer.parseInt(hex, 16);
+                        } catch (NumberFormatException ex) {
+                            throw error("Bad escape \\u" + hex);
+                        }
+                        break;
+                    default:
+                        break; // '"', '\\' and '/' stand for themselves
+                }
+            }
+            appendText(c);
+        }
+    }
+
+    private boolean textEquals(char[] expected) {
+        if (textLength != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (text[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendText(char c) {
+        if (textLength == text.length) {
+            char[] grown = new char[text.length * 2];
+            System.arraycopy(text, 0, grown, 0, textLength);
+            text = grown;
+        }
+        text[textLength++] = c;
+    }
+
+    private void expect(char expected) throws IOException {
+        char c = nextSkippingWhitespace();
+        if (c != expected) {
+            throw error("Expected '" + expected + "' but found '" + c + "'");
+        }
+    }
+
+    private char nextSkippingWhitespace() throws IOException {
+        peekSkippingWhitespace();
+        return next();
+    }
+
+    private char peekSkippingWhitespace() throws IOException {
+        char c = peek();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            position++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private char next() throws IOException {
+        char c = peek();
+        if (limit == 0) {
+            throw error("Unexpected end of input");
+        }
+        position++;
+        return c;
+    }
+
+    /** Returns the next char without consuming it, or 0 at end of input. */
+    private char peek() throws IOException {
+        if (position >= limit) {
+            consumed += limit;
+            limit = Math.max(reader.read(buffer, 0, buffer.length), 0);
+            position = 0;
+            if (limit == 0) {
+                return 0;
+            }
+        }
+        return buffer[position];
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed price response at offset " + (consumed + position) + ": " + message);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Source of coin prices. Implementations are called off the EDT.
+ */
+interface PriceProvider {
+
+    /**
+     * System property selecting the provider: {@code coingecko} (default),
+     * {@code local} for a deterministic synthetic feed, or
+     * {@code local:<path>} to serve prices from a JSON file in the CoinGecko
+     * {@code simple/price} format.
+     */
+    String PROVIDER_PROPERTY = "cryptoportfolio.prices";
+
+    /**
+     * Fetches prices for the given coin ids and passes each one to the
+     * consumer as soon as it is read. Ids the source does not know are
+     * skipped; ids that were not asked for may still be reported.
+     */
+    void fetchPrices(Collection<String> ids, PriceConsumer consumer) throws IOException;
+
+    /** Number of API requests {@link #fetchPrices} makes for these ids. */
+    default int requestCount(Collection<String> ids) {
+        return ids.isEmpty() ? 0 : 1;
+    }
+
+    /** Creates the configured provider, wrapped to fetch in concurrent batches. */
+    static PriceProvider fromSystemProperties() {
+        String source = System.getProperty(PROVIDER_PROPERTY, "coingecko");
+        PriceProvider provider;
+        if (source.equalsIgnoreCase("local")) {
+            provider = new LocalPriceProvider(null);
+        } else if (source.regionMatches(true, 0, "local:", 0, 6)) {
+            provider = new LocalPriceProvider(new File(source.substring(6)));
+        } else {
+            provider = new CoinGeckoPriceProvider();
+        }
+        return BatchingPriceProvider.wrap(provider);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.Arrays;
+
+/**
+ * Prices of one coin over time, as two parallel primitive columns sorted by
+ * timestamp. At most one point is kept per timestamp; writing the same
+ * timestamp again replaces the price.
+ */
+final class PriceSeries {
+
+    long[] times;
+    double[] prices;
+    int size;
+
+    PriceSeries() {
+        this(16);
+    }
+
+    PriceSeries(int capacity) {
+        times = new long[Math.max(1, capacity)];
+        prices = new double[Math.max(1, capacity)];
+    }
+
+    void put(long time, double price) {
+        if (size == 0 || time > times[size - 1]) {
+            append(time, price);
+            return;
+        }
+        if (time == times[size - 1]) {
+            prices[size - 1] = price;
+            return;
+        }
+        // Out of order, which only happens when sources overlap
+        int index = Arrays.binarySearch(times, 0, size, time);
+        if (index >= 0) {
+            prices[index] = price;
+            return;
+        }
+        index = -index - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(times, index, times, index + 1, size - index);
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        times[index] = time;
+        prices[index] = price;
+        size++;
+    }
+
+    void putAll(PriceSeries other) {
+        for (int i = 0; i < other.size; i++) {
+            put(other.times[i], other.prices[i]);
+        }
+    }
+
+    /** Index of the first point at or after the time, or {@code size}. */
+    int indexAtOrAfter(long time) {
+        int index = Arrays.binarySearch(times, 0, size, time);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /** Copies the points with {@code from <= time < to}. */
+    PriceSeries slice(long from, long to) {
+        int start = indexAtOrAfter(from);
+        int end = indexAtOrAfter(to);
+        PriceSeries slice = new PriceSeries(end - start);
+        System.arraycopy(times, start, slice.times, 0, end - start);
+        System.arraycopy(prices, start, slice.prices, 0, end - start);
+        slice.size = end - start;
+        return slice;
+    }
+
+    /** Keeps the last price in every {@code resolution}-wide bucket. */
+    PriceSeries downsample(long resolution) {
+        PriceSeries result = new PriceSeries(Math.max(1, size / 16));
+        for (int i = 0; i < size; i++) {
+            result.put(Math.floorDiv(times[i], resolution) * resolution, prices[i]);
+        }
+        return result;
+    }
+
+    private void append(long time, double price) {
+        ensureCapacity(size + 1);
+        times[size] = time;
+        prices[size] = price;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            int grown = Math.max(capacity, times.length * 2);
+            times = Arrays.copyOf(times, grown);
+            prices = Arrays.copyOf(prices, grown);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live prices pushed over a WebSocket ticker feed.
+ *
+ * The client sends {@code {"subscribe":["bitcoin",...]}} whenever the held
+ * coins change, and the feed answers with messages in the CoinGecko
+ * {@code simple/price} shape, one or more coins each. Ticks are coalesced
+ * per coin: only the latest price of each coin since the last flush is
+ * published to the {@link PriceCache}, at most once per flush interval,
+ * however fast the feed is.
+ *
+ * Streamed prices keep their cache entries fresh, so the regular poller
+ * finds nothing stale while the stream is up and takes over again if it
+ * drops. Lost connections are retried with backoff.
+ */
+class PriceStream implements WebSocket.Listener {
+
+    /**
+     * System property with the feed URL, e.g. {@code ws://localhost:8765/},
+     * or {@code local} to run a {@link LocalTickerServer} in-process.
+     */
+    static final String STREAM_PROPERTY = "cryptoportfolio.stream";
+
+    private static final long FLUSH_MILLIS = 50;
+    private static final long MIN_RECONNECT_MILLIS = 1000;
+    private static final long MAX_RECONNECT_MILLIS = 60000;
+
+    private final URI uri;
+    private final PriceCache priceCache;
+    private final ScheduledExecutorService timer;
+    private LocalTickerServer localServer;
+
+    // Latest tick per coin since the last flush
+    private Map<String, double[]> pending = new HashMap<>();
+
+    private volatile List<String> subscribed = Collections.emptyList();
+    private volatile WebSocket socket;
+    private volatile boolean closed;
+    private CompletableFuture<?> sends = CompletableFuture.completedFuture(null);
+    private int failures;
+
+    // Listener callbacks for one socket never overlap
+    private final StringBuilder message = new StringBuilder();
+
+    PriceStream(URI uri, PriceCache priceCache) {
+        this.uri = uri;
+        this.priceCache = priceCache;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "price-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Returns the configured stream, or null when streaming is off. */
+    static PriceStream fromSystemProperties(PriceCache priceCache) {
+        String source = System.getProperty(STREAM_PROPERTY);
+        if (source == null || source.trim().isEmpty()) {
+            return null;
+        }
+        LocalTickerServer server = null;
+        if (source.equalsIgnoreCase("local")) {
+            try {
+                server = new LocalTickerServer(0, LocalTickerServer.DEFAULT_TICK_MILLIS);
+                server.start();
+                source = "ws://127.0.0.1:" + server.getPort() + "/";
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return null;
+            }
+        }
+        PriceStream stream = new PriceStream(URI.create(source), priceCache);
+        stream.localServer = server;
+        return stream;
+    }
+
+    void start() {
+        connect();
+    }
+
+    /** Replaces the set of streamed coins. */
+    void subscribe(Collection<String> ids) {
+        subscribed = new ArrayList<>(ids);
+        WebSocket current = socket;
+        if (current != null) {
+            sendSubscription(current);
+        }
+    }
+
+    /** Closes the socket, stops reconnecting and shuts down an in-process feed. */
+    void close() {
+        closed = true;
+        WebSocket current = socket;
+        if (current != null) {
+            current.sendClose(WebSocket.NORMAL_CLOSURE, "");
+        }
+        timer.shutdownNow();
+        if (localServer != null) {
+            try {
+                localServer.stop();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void connect() {
+        if (closed) {
+            return;
+        }
+        HttpFetcher.SHARED.client().newWebSocketBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .buildAsync(uri, this)
+                .whenComplete((ws, ex) -> {
+                    if (ex != null) {
+                        System.err.println("Price stream " + uri + " unavailable: " + ex.getMessage());
+                        reconnectLater();
+                    }
+                });
+    }
+
+    private void reconnectLater() {
+        socket = null;
+        if (closed) {
+            return;
+        }
+        long delay;
+        synchronized (this) {
+            failures++;
+            delay = Math.min(MAX_RECONNECT_MILLIS, MIN_RECONNECT_MILLIS << Math.min(failures - 1, 16));
+        }
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        schedule(this::connect, delay);
+    }
+
+    // close() can shut the timer down between a caller's closed check and here
+    private void schedule(Runnable task, long delayMillis) {
+        try {
+            timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Closed meanwhile, nothing left to do
+        }
+    }
+
+    private synchronized void sendSubscription(WebSocket ws) {
+        StringBuilder json = new StringBuilder("{\"subscribe\":[");
+        List<String> ids = subscribed;
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(ids.get(i)).append('"');
+        }
+        String text = json.append("]}").toString();
+        // A WebSocket allows one outstanding send at a time
+        sends = sends.exceptionally(ex -> null).thenCompose(ignored -> ws.sendText(text, true));
+    }
+
+    @Override
+    public void onOpen(WebSocket ws) {
+        synchronized (this) {
+            failures = 0;
+            sends = CompletableFuture.completedFuture(null);
+        }
+        socket = ws;
+        sendSubscription(ws);
+        ws.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        message.append(data);
+        if (last) {
+            try {
+                PriceJsonParser.parse(new StringReader(message.toString()), this::tick);
+            } catch (IOException ex) {
+                System.err.println("Ignoring bad tick: " + ex.getMessage());
+            }
+            message.setLength(0);
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+        message.setLength(0);
+        reconnectLater();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        System.err.println("Price stream error: " + error.getMessage());
+        message.setLength(0);
+        reconnectLater();
+    }
+
+    private void tick(String id, double priceUSD, double change24h) {
+        if (closed) {
+            return;
+        }
+        synchronized (this) {
+            boolean first = pending.isEmpty();
+            pending.put(id, new double[]{priceUSD, change24h});
+            if (!first) {
+                return;
+            }
+        }
+        schedule(this::flush, FLUSH_MILLIS);
+    }
+
+    private void flush() {
+        Map<String, double[]> ticks;
+        synchronized (this) {
+            ticks = pending;
+            pending = new HashMap<>();
+        }
+        PriceCache.Batch batch = priceCache.newBatch();
+        for (Map.Entry<String, double[]> tick : ticks.entrySet()) {
+            batch.accept(tick.getKey(), tick.getValue()[0], tick.getValue()[1]);
+        }
+        batch.commit();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import javax.swing.Timer;
+
+/**
+ * Carries price changes from the {@link PriceCache} to the table at a fixed
+ * frame rate.
+ *
+ * Changed coins are collected into a dirty set on whatever thread committed
+ * them. A coin that changes again before the next flush is merged into the
+ * pending entry. At most once per frame the EDT takes the set and repaints
+ * only the rows holding those coins; coins nobody holds are dropped there.
+ *
+ * The rate comes from {@code cryptoportfolio.uiHz} (default 20). With
+ * {@code -Dcryptoportfolio.metrics=true} tick and flush statistics go to
+ * stderr every ten seconds until {@link #stop()}; {@link #metrics()} can
+ * be read at any time.
+ */
+class PriceUpdatePipeline implements PriceCache.Listener {
+
+    static final String RATE_PROPERTY = "cryptoportfolio.uiHz";
+    static final String METRICS_PROPERTY = "cryptoportfolio.metrics";
+
+    private static final int DEFAULT_RATE = 20;
+    private static final int METRICS_INTERVAL_MILLIS = 10000;
+
+    private final HoldingsTableModel model;
+    private final Runnable afterFlush;
+    private final EdtHandoff handoff;
+    private Timer metricsTimer;
+
+    private Set<String> dirty = new HashSet<>(); // Guarded by this
+
+    // Counters; ticks and merged are guarded by this, the rest are EDT only
+    private long ticks;
+    private long merged;
+    private long dropped;
+    private long flushes;
+    private long coinsRefreshed;
+    private long edtNanos;
+    private long maxEdtNanos;
+
+    /**
+     * @param afterFlush runs on the EDT after each flush, e.g. to show the new total
+     */
+    PriceUpdatePipeline(HoldingsTableModel model, Runnable afterFlush, int framesPerSecond) {
+        this(model, afterFlush, framesPerSecond, System::currentTimeMillis);
+    }
+
+    /** @param clock millisecond time that frames are measured against */
+    PriceUpdatePipeline(HoldingsTableModel model, Runnable afterFlush, int framesPerSecond, LongSupplier clock) {
+        this.model = model;
+        this.afterFlush = afterFlush;
+        this.handoff = new EdtHandoff(this::flush, framesPerSecond, clock);
+    }
+
+    static PriceUpdatePipeline fromSystemProperties(HoldingsTableModel model, Runnable afterFlush) {
+        int rate = Math.max(1, Math.min(60, Integer.getInteger(RATE_PROPERTY, DEFAULT_RATE)));
+        PriceUpdatePipeline pipeline = new PriceUpdatePipeline(model, afterFlush, rate);
+        if (Boolean.getBoolean(METRICS_PROPERTY)) {
+            pipeline.logMetrics(METRICS_INTERVAL_MILLIS);
+        }
+        return pipeline;
+    }
+
+    /** Writes {@link #metrics()} to stderr at the given interval. Call on the EDT. */
+    void logMetrics(int intervalMillis) {
+        if (metricsTimer == null) {
+            metricsTimer = new Timer(intervalMillis, e -> System.err.println(metrics()));
+            metricsTimer.start();
+        }
+    }
+
+    /** Stops the metrics log. Prices that still arrive are flushed as usual. */
+    void stop() {
+        if (metricsTimer != null) {
+            metricsTimer.stop();
+            metricsTimer = null;
+        }
+    }
+
+    @Override
+    public void pricesChanged(Collection<String> ids) {
+        synchronized (this) {
+            ticks += ids.size();
+            for (String id : ids) {
+                if (!dirty.add(id)) {
+                    merged++;
+                }
+            }
+        }
+        handoff.post();
+    }
+
+    // EDT
+    private void flush() {
+        Set<String> coins;
+        synchronized (this) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            coins = dirty;
+            dirty = new HashSet<>();
+        }
+        long start = System.nanoTime();
+        int held = model.refreshCoins(coins);
+        afterFlush.run();
+        long elapsed = System.nanoTime() - start;
+
+        dropped += coins.size() - held;
+        flushes++;
+        coinsRefreshed += held;
+        edtNanos += elapsed;
+        maxEdtNanos = Math.max(maxEdtNanos, elapsed);
+    }
+
+    /** One-line summary of the counters. Call on the EDT. */
+    String metrics() {
+        long received;
+        long coalesced;
+        synchronized (this) {
+            received = ticks;
+            coalesced = merged;
+        }
+        return String.format(Locale.ROOT,
+                "price pipeline: %d ticks, %d merged, %d dropped, %d flushes (%d coins), EDT avg %.3f ms max %.3f ms",
+                received, coalesced, dropped, flushes, coinsRefreshed,
+                flushes == 0 ? 0.0 : edtNanos / 1e6 / flushes, maxEdtNanos / 1e6);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Realized and unrealized P&L per coin and for the whole ledger.
+ *
+ * Each coin has a {@link Position}. A new trade is applied to its coin's
+ * position only; a trade dated before that coin's latest one rebuilds just
+ * that coin from its own sorted trades. A price change adjusts the
+ * portfolio's unrealized total by {@code quantity * (new - old)} for each
+ * changed coin. Nothing replays the whole ledger after loading.
+ *
+ * Coins without a price yet count as zero unrealized P&L. The lot matching
+ * method comes from {@code cryptoportfolio.costBasis}: {@code fifo}
+ * (default), {@code lifo} or {@code average}.
+ *
+ * Thread-safe: trades arrive on the EDT, prices on whichever thread
+ * committed them.
+ */
+class ProfitAndLoss implements PriceCache.Listener {
+
+    static final String METHOD_PROPERTY = "cryptoportfolio.costBasis";
+
+    // Stable, so trades with the same time keep their order
+    private static final Comparator<Trade> BY_TIME = (a, b) -> Long.compare(a.timestamp, b.timestamp);
+
+    private final Position.Method method;
+    private final PriceCache priceCache;
+
+    // Guarded by this
+    private final Map<String, Position> positions = new HashMap<>();
+    private final Map<String, List<Trade>> tradesByCoin = new HashMap<>();
+    private final Map<String, Double> prices = new HashMap<>(); // Price each position is valued at
+    private double realized;
+    private double unrealized;
+
+    ProfitAndLoss(Position.Method method, PriceCache priceCache) {
+        this.method = method;
+        this.priceCache = priceCache;
+    }
+
+    static ProfitAndLoss fromSystemProperties(PriceCache priceCache) {
+        String configured = System.getProperty(METHOD_PROPERTY, "fifo");
+        Position.Method method;
+        try {
+            method = Position.Method.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Unknown cost basis method " + configured + ", using FIFO");
+            method = Position.Method.FIFO;
+        }
+        return new ProfitAndLoss(method, priceCache);
+    }
+
+    Position.Method method() {
+        return method;
+    }
+
+    /**
+     * Applies a batch of trades in any order, e.g. from the ledger or an
+     * import. A coin that receives trades older than its latest one is
+     * rebuilt once for the whole batch rather than once per trade.
+     */
+    synchronized void addAll(Collection<Trade> trades) {
+        List<Trade> sorted = new ArrayList<>(trades);
+        sorted.sort(BY_TIME);
+        Map<String, List<Trade>> late = new HashMap<>();
+        for (Trade trade : sorted) {
+            Position position = positions.get(trade.coinId);
+            if (late.containsKey(trade.coinId) || (position != null && trade.timestamp < position.lastTimestamp())) {
+                late.computeIfAbsent(trade.coinId, id -> new ArrayList<>()).add(trade);
+            } else {
+                add(trade);
+            }
+        }
+        for (Map.Entry<String, List<Trade>> entry : late.entrySet()) {
+            List<Trade> coinTrades = tradesByCoin.get(entry.getKey());
+            coinTrades.addAll(entry.getValue());
+            coinTrades.sort(BY_TIME);
+            rebuild(entry.getKey(), coinTrades);
+        }
+    }
+
+    synchronized void add(Trade trade) {
+        List<Trade> coinTrades = tradesByCoin.computeIfAbsent(trade.coinId, id -> new ArrayList<>());
+        Position position = positions.get(trade.coinId);
+        if (position != null && trade.timestamp < position.lastTimestamp()) {
+            // Late trade: insert after any trades with the same time and replay this coin only
+            int index = coinTrades.size();
+            while (index > 0 && coinTrades.get(index - 1).timestamp > trade.timestamp) {
+                index--;
+            }
+            coinTrades.add(index, trade);
+            rebuild(trade.coinId, coinTrades);
+            return;
+        }
+
+        double before = position == null ? 0 : valued(trade.coinId, position);
+        realized -= position == null ? 0 : position.realized();
+        coinTrades.add(trade);
+        if (position == null) {
+            position = new Position(method);
+            positions.put(trade.coinId, position);
+        }
+        position.apply(trade);
+        updateTotals(trade.coinId, position, before);
+    }
+
+    @Override
+    public synchronized void pricesChanged(Collection<String> ids) {
+        for (String id : ids) {
+            Position position = positions.get(id);
+            PriceCache.Entry entry = priceCache.get(id);
+            if (position == null || entry == null) {
+                continue;
+            }
+            Double previous = prices.put(id, entry.priceUSD);
+            if (previous == null) {
+                unrealized += position.unrealized(entry.priceUSD);
+            } else {
+                unrealized += position.quantity() * (entry.priceUSD - previous);
+            }
+        }
+    }
+
+    synchronized double realized() {
+        return realized;
+    }
+
+    synchronized double unrealized() {
+        return unrealized;
+    }
+
+    synchronized double realized(String coinId) {
+        Position position = positions.get(coinId);
+        return position == null ? 0 : position.realized();
+    }
+
+    synchronized double unrealized(String coinId) {
+        Position position = positions.get(coinId);
+        return position == null ? 0 : valued(coinId, position);
+    }
+
+    /** Copies of the coin's open lots, oldest first. */
+    synchronized List<Position.Lot> lots(String coinId) {
+        Position position = positions.get(coinId);
+        return position == null ? Collections.emptyList() : position.lots();
+    }
+
+    private void rebuild(String coinId, List<Trade> coinTrades) {
+        Position previous = positions.get(coinId);
+        double before = previous == null ? 0 : valued(coinId, previous);
+        realized -= previous == null ? 0 : previous.realized();
+        Position position = new Position(method);
+        for (Trade trade : coinTrades) {
+            position.apply(trade);
+        }
+        positions.put(coinId, position);
+        updateTotals(coinId, position, before);
+    }
+
+    private void updateTotals(String coinId, Position position, double unrealizedBefore) {
+        realized += position.realized();
+        PriceCache.Entry entry = priceCache.get(coinId);
+        if (entry != null) {
+            prices.put(coinId, entry.priceUSD);
+        }
+        unrealized += valued(coinId, position) - unrealizedBefore;
+    }
+
+    private double valued(String coinId, Position position) {
+        Double price = prices.get(coinId);
+        return price == null ? 0 : position.unrealized(price);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs price refreshes on a single background thread, within a request budget.
+ *
+ * Refresh requests are coalesced: however many arrive while a refresh is
+ * queued or running, at most one more refresh follows. Every run spends
+ * tokens from a bucket that refills at {@code requestsPerMinute}; a request
+ * that finds the bucket empty waits until it has refilled instead of
+ * running. After a failure the next attempt is delayed exponentially, with
+ * jitter so that many clients do not retry in lockstep; only a forced
+ * refresh runs before that delay is up. The regular interval
+ * grows when one refresh needs more requests than the budget allows per
+ * interval.
+ *
+ * All scheduling state is confined to the scheduler thread.
+ */
+class RefreshScheduler {
+
+    static final String INTERVAL_PROPERTY = "cryptoportfolio.refreshSeconds";
+    static final String BUDGET_PROPERTY = "cryptoportfolio.requestsPerMinute";
+    static final String BURST_PROPERTY = "cryptoportfolio.requestBurst";
+
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+    private static final int DEFAULT_REQUESTS_PER_MINUTE = 10;
+    private static final int DEFAULT_BURST = 5;
+
+    private static final long MIN_BACKOFF_MILLIS = 5000;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60 * 1000;
+
+    /** The refresh itself. Runs on the scheduler thread. */
+    interface Task {
+        /**
+         * @param force true when the user asked for fresh prices
+         * @return the number of API requests the refresh made
+         */
+        int refresh(boolean force) throws Exception;
+    }
+
+    /** Notified on the scheduler thread after every refresh. */
+    interface Listener {
+        void refreshed();
+
+        void refreshFailed(Exception ex, int consecutiveFailures, long retryMillis);
+    }
+
+    private final Task task;
+    private final Listener listener;
+    private final long intervalMillis;
+    private final double tokensPerMilli;
+    private final double capacity;
+    private final ScheduledExecutorService executor;
+
+    // Scheduler thread only
+    private double tokens;
+    private long refilledAt;
+    private ScheduledFuture<?> next;
+    private long nextAt;
+    private boolean forcePending;
+    private int failures;
+    private long backoffUntil;
+
+    RefreshScheduler(Task task, Listener listener, long intervalMillis, double requestsPerMinute, int burst) {
+        this(task, listener, intervalMillis, requestsPerMinute, burst, "price-refresh");
+    }
+
+    RefreshScheduler(Task task, Listener listener, long intervalMillis, double requestsPerMinute, int burst,
+            String threadName) {
+        this.task = task;
+        this.listener = listener;
+        this.intervalMillis = intervalMillis;
+        this.tokensPerMilli = requestsPerMinute / 60000.0;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = System.currentTimeMillis();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static RefreshScheduler fromSystemProperties(Task task, Listener listener) {
+        int seconds = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL_SECONDS);
+        int budget = Integer.getInteger(BUDGET_PROPERTY, DEFAULT_REQUESTS_PER_MINUTE);
+        int burst = Integer.getInteger(BURST_PROPERTY, DEFAULT_BURST);
+        return new RefreshScheduler(task, listener, Math.max(1, seconds) * 1000L, Math.max(1, budget), burst);
+    }
+
+    /** Runs a first refresh now and keeps refreshing on the interval. */
+    void start() {
+        requestRefresh(false);
+    }
+
+    /**
+     * Asks for a refresh as soon as the budget allows and, unless forced,
+     * any backoff after a failure is over. Requests made while one is
+     * already queued are merged into it.
+     */
+    void requestRefresh(boolean force) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            forcePending |= force;
+            long delay = tokenDelay();
+            if (!force) {
+                delay = Math.max(delay, backoffUntil - System.currentTimeMillis());
+            }
+            scheduleIn(delay);
+        });
+    }
+
+    /** Cancels queued refreshes and ends the thread. Later requests are ignored. */
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private void run() {
+        next = null;
+        long wait = tokenDelay();
+        if (wait > 0) {
+            scheduleIn(wait);
+            return;
+        }
+
+        boolean force = forcePending;
+        forcePending = false;
+        try {
+            int requests = task.refresh(force);
+            tokens -= requests;
+            failures = 0;
+            backoffUntil = 0;
+            // Stretch the interval when one refresh costs more than the budget allows per interval
+            long affordable = (long) Math.ceil(requests / tokensPerMilli);
+            scheduleIn(Math.max(intervalMillis, affordable));
+            listener.refreshed();
+        } catch (Exception ex) {
+            tokens -= 1;
+            failures++;
+            long retry = backoff(failures);
+            backoffUntil = System.currentTimeMillis() + retry;
+            scheduleIn(retry);
+            listener.refreshFailed(ex, failures, retry);
+        }
+    }
+
+    /** Schedules the next run, unless one is already due sooner. */
+    private void scheduleIn(long delayMillis) {
+        long at = System.currentTimeMillis() + delayMillis;
+        if (next != null) {
+            if (nextAt <= at) {
+                return;
+            }
+            next.cancel(false);
+        }
+        nextAt = at;
+        next = executor.schedule(this::run, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Milliseconds until the bucket holds a whole token, after refilling it. */
+    private long tokenDelay() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerMilli);
+        refilledAt = now;
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerMilli);
+    }
+
+    /** Exponential backoff with jitter: a random delay in the upper half of the window. */
+    private static long backoff(int failures) {
+        long window = MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16);
+        window = Math.min(window, MAX_BACKOFF_MILLIS);
+        return window / 2 + ThreadLocalRandom.current().nextLong(window / 2 + 1);
+    }
+}
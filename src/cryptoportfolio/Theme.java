@@ -0,0 +1,32 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.awt.Color;
+import java.awt.Font;
+
+/**
+ * Colors and fonts shared by the table renderers, so painting a cell never
+ * creates them.
+ */
+final class Theme {
+
+    static final Color BACKGROUND = new Color(30, 41, 59);
+    static final Color SELECTION = new Color(51, 65, 85);
+    static final Color ACCENT = new Color(37, 99, 235);
+    static final Color DANGER = new Color(220, 38, 38);
+    static final Color TEXT = Color.WHITE;
+    static final Color GAIN = new Color(74, 222, 128);
+    static final Color LOSS = new Color(248, 113, 113);
+    static final Color MUTED = new Color(148, 163, 184);
+
+    static final Font CELL_FONT = new Font("Arial", Font.PLAIN, 13);
+    static final Font HEADER_FONT = new Font("Arial", Font.BOLD, 12);
+    static final Font BUTTON_FONT = new Font("Arial", Font.PLAIN, 11);
+
+    private Theme() {
+    }
+}
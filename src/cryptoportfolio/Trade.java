@@ -0,0 +1,60 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+/**
+ * One immutable ledger entry. Amounts are in coins and always positive; the
+ * type says which way they move. Prices and fees are in USD.
+ */
+final class Trade {
+
+    enum Type {
+        /** Coins bought at {@code priceUSD}; the fee adds to their cost. */
+        BUY,
+        /** Coins sold at {@code priceUSD}; the fee reduces the proceeds. */
+        SELL,
+        /** Coins arriving from elsewhere, valued at {@code priceUSD}. */
+        TRANSFER_IN,
+        /** Coins leaving to elsewhere; their cost goes with them, nothing is realized. */
+        TRANSFER_OUT,
+        /** Coins spent on a fee; their cost is realized as a loss. */
+        FEE
+    }
+
+    final long timestamp;
+    final Type type;
+    final String coinId;
+    final double amount;
+    final double priceUSD;
+    final double feeUSD;
+    /** Exchange trade id or similar, empty if unknown. */
+    final String reference;
+
+    Trade(long timestamp, Type type, String coinId, double amount, double priceUSD, double feeUSD, String reference) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.coinId = coinId;
+        this.amount = amount;
+        this.priceUSD = priceUSD;
+        this.feeUSD = feeUSD;
+        this.reference = reference == null ? "" : reference;
+    }
+
+    Trade(long timestamp, Type type, String coinId, double amount, double priceUSD) {
+        this(timestamp, type, coinId, amount, priceUSD, 0.0, "");
+    }
+
+    /**
+     * Identity used to spot the same trade imported twice: the coin and the
+     * external reference when there is one, otherwise every field.
+     */
+    String key() {
+        if (!reference.isEmpty()) {
+            return coinId + '#' + reference;
+        }
+        return coinId + '|' + timestamp + '|' + type + '|' + amount + '|' + priceUSD + '|' + feeUSD;
+    }
+}
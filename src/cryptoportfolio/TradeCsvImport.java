@@ -0,0 +1,333 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Reads trades from an exchange trade-history CSV in one streaming pass.
+ *
+ * Columns are found by header name, so exports that call them
+ * {@code Date}/{@code Side}/{@code Asset}/{@code Quantity} or
+ * {@code timestamp}/{@code type}/{@code coin}/{@code amount} both work.
+ * Rows that fail validation are counted and skipped, and trades already
+ * seen in the file or the ledger are dropped as duplicates. Nothing is
+ * written here: the caller stores the result in one batch.
+ *
+ * {@link #read} runs on a background thread; {@link #progress()} and
+ * {@link #cancel()} may be called from any other.
+ */
+class TradeCsvImport {
+
+    private static final int MAX_ERRORS = 20;
+
+    private static final List<String> TIME_COLUMNS = Arrays.asList(
+            "timestamp", "date", "time", "datetime", "dateutc", "timeutc", "createdat");
+    private static final List<String> TYPE_COLUMNS = Arrays.asList(
+            "type", "side", "transactiontype", "operation", "kind");
+    private static final List<String> COIN_COLUMNS = Arrays.asList(
+            "coin", "asset", "symbol", "currency", "ticker", "coinid");
+    private static final List<String> AMOUNT_COLUMNS = Arrays.asList(
+            "amount", "quantity", "qty", "size", "executed");
+    private static final List<String> PRICE_COLUMNS = Arrays.asList(
+            "price", "priceusd", "unitprice", "rate");
+    private static final List<String> FEE_COLUMNS = Arrays.asList(
+            "fee", "feeusd", "fees");
+    private static final List<String> REFERENCE_COLUMNS = Arrays.asList(
+            "id", "tradeid", "txid", "transactionid", "orderid", "reference");
+
+    /** What one import produced. */
+    static final class Result {
+        final List<Trade> trades;
+        final int rows;
+        final int duplicates;
+        final int invalid;
+        /** The first few validation messages, with line numbers. */
+        final List<String> errors;
+        final boolean cancelled;
+
+        Result(List<Trade> trades, int rows, int duplicates, int invalid, List<String> errors, boolean cancelled) {
+            this.trades = trades;
+            this.rows = rows;
+            this.duplicates = duplicates;
+            this.invalid = invalid;
+            this.errors = errors;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private final AssetRegistry registry;
+    private final Predicate<Trade> alreadyStored;
+
+    private volatile boolean cancelled;
+    private volatile long charsRead;
+    private volatile long totalChars = 1;
+
+    TradeCsvImport(AssetRegistry registry, Predicate<Trade> alreadyStored) {
+        this.registry = registry;
+        this.alreadyStored = alreadyStored;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Fraction of the file read so far, from 0 to 1. */
+    double progress() {
+        return Math.min(1.0, (double) charsRead / totalChars);
+    }
+
+    Result read(File file) throws IOException {
+        totalChars = Math.max(1, file.length());
+        List<Trade> trades = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        List<String> errors = new ArrayList<>();
+        int rows = 0;
+        int duplicates = 0;
+        int invalid = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("The file is empty");
+            }
+            charsRead = header.length() + 1;
+            Columns columns = new Columns(AssetRegistry.splitCsvLine(stripBom(header)));
+
+            String line;
+            int lineNumber = 1;
+            long read = charsRead;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                read += line.length() + 1;
+                if ((lineNumber & 0x3FF) == 0) {
+                    charsRead = read;
+                    if (cancelled) {
+                        break;
+                    }
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                rows++;
+                Trade trade;
+                try {
+                    trade = columns.parse(AssetRegistry.splitCsvLine(line));
+                } catch (IllegalArgumentException | DateTimeException ex) {
+                    invalid++;
+                    if (errors.size() < MAX_ERRORS) {
+                        errors.add("Line " + lineNumber + ": " + ex.getMessage());
+                    }
+                    continue;
+                }
+                if (!seen.add(trade.key()) || alreadyStored.test(trade)) {
+                    duplicates++;
+                    continue;
+                }
+                trades.add(trade);
+            }
+            charsRead = read;
+        }
+        return new Result(trades, rows, duplicates, invalid, errors, cancelled);
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+
+    /** Positions of the known columns in one file's header. */
+    private final class Columns {
+        final int time;
+        final int type;
+        final int coin;
+        final int amount;
+        final int price;
+        final int fee;
+        final int reference;
+
+        Columns(String[] header) throws IOException {
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                positions.putIfAbsent(normalize(header[i]), i);
+            }
+            time = find(positions, TIME_COLUMNS);
+            type = find(positions, TYPE_COLUMNS);
+            coin = find(positions, COIN_COLUMNS);
+            amount = find(positions, AMOUNT_COLUMNS);
+            price = find(positions, PRICE_COLUMNS);
+            fee = find(positions, FEE_COLUMNS);
+            reference = find(positions, REFERENCE_COLUMNS);
+            if (time < 0 || type < 0 || coin < 0 || amount < 0) {
+                throw new IOException("The header needs date, type, coin and amount columns: "
+                        + String.join(",", header));
+            }
+        }
+
+        Trade parse(String[] fields) {
+            Trade.Type tradeType = parseType(field(fields, type));
+            Asset asset = registry.resolve(field(fields, coin));
+            if (asset == null) {
+                throw new IllegalArgumentException("Unknown coin \"" + field(fields, coin) + "\"");
+            }
+            double quantity = parseNumber(field(fields, amount), "amount");
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Amount must be greater than zero");
+            }
+            boolean priced = tradeType == Trade.Type.BUY || tradeType == Trade.Type.SELL;
+            String priceText = field(fields, price);
+            if (priced && priceText.isEmpty()) {
+                throw new IllegalArgumentException("A " + tradeType + " needs a price");
+            }
+            double unitPrice = priceText.isEmpty() ? 0.0 : parseNumber(priceText, "price");
+            String feeText = field(fields, fee);
+            double feeUSD = feeText.isEmpty() ? 0.0 : parseNumber(feeText, "fee");
+            if (unitPrice < 0 || feeUSD < 0) {
+                throw new IllegalArgumentException("Price and fee cannot be negative");
+            }
+            return new Trade(parseTime(field(fields, time)), tradeType, asset.id, quantity, unitPrice, feeUSD,
+                    field(fields, reference));
+        }
+
+        private String field(String[] fields, int index) {
+            return index >= 0 && index < fields.length ? fields[index] : "";
+        }
+    }
+
+    private static int find(Map<String, Integer> positions, List<String> names) {
+        for (String name : names) {
+            Integer position = positions.get(name);
+            if (position != null) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static Trade.Type parseType(String text) {
+        switch (normalize(text)) {
+            case "buy":
+            case "bought":
+                return Trade.Type.BUY;
+            case "sell":
+            case "sold":
+                return Trade.Type.SELL;
+            case "deposit":
+            case "receive":
+            case "received":
+            case "transferin":
+                return Trade.Type.TRANSFER_IN;
+            case "withdrawal":
+            case "withdraw":
+            case "send":
+            case "sent":
+            case "transferout":
+                return Trade.Type.TRANSFER_OUT;
+            case "fee":
+                return Trade.Type.FEE;
+            default:
+                throw new IllegalArgumentException("Unknown trade type \"" + text + "\"");
+        }
+    }
+
+    /** Lower-case letters and digits only, so "Transfer In" matches "transferin". */
+    private static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /** Accepts plain numbers as well as {@code "$1,234.50"}. */
+    private static double parseNumber(String text, String what) {
+        String cleaned = text.replace("$", "").replace(",", "").trim();
+        double value;
+        try {
+            value = Double.parseDouble(cleaned);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Bad " + what + " \"" + text + "\"");
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Bad " + what + " \"" + text + "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Epoch seconds or milliseconds, ISO-8601 instants, or local date-times
+     * and dates, which are taken as UTC.
+     */
+    private static long parseTime(String text) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Missing date");
+        }
+        char first = text.charAt(0);
+        if (Character.isDigit(first) && text.indexOf('-') < 0 && text.indexOf('/') < 0 && text.indexOf(':') < 0) {
+            double epoch = parseNumber(text, "timestamp");
+            // Anything below this is seconds: 1e11 ms is 1973, 1e11 s is year 5138
+            return epoch < 1e11 ? (long) (epoch * 1000) : (long) epoch;
+        }
+        String iso = text.replace('/', '-');
+        if (iso.length() > 10 && iso.charAt(10) == ' ') {
+            iso = iso.substring(0, 10) + 'T' + iso.substring(11);
+        }
+        if (iso.length() == 19 && isPlainDateTime(iso)) {
+            // The common export format, read without a formatter
+            return LocalDateTime.of(digits(iso, 0, 4), digits(iso, 5, 7), digits(iso, 8, 10),
+                    digits(iso, 11, 13), digits(iso, 14, 16), digits(iso, 17, 19))
+                    .toEpochSecond(ZoneOffset.UTC) * 1000;
+        }
+        if (iso.length() == 10) {
+            return LocalDate.parse(iso).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+        if (iso.endsWith("Z") || iso.indexOf('+', 19) > 0 || iso.indexOf('-', 19) > 0) {
+            return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+        }
+        return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /** {@code yyyy-MM-ddTHH:mm:ss} with digits everywhere else. */
+    private static boolean isPlainDateTime(String iso) {
+        for (int i = 0; i < 19; i++) {
+            char c = iso.charAt(i);
+            char expected = i == 4 || i == 7 ? '-' : i == 10 ? 'T' : i == 13 || i == 16 ? ':' : '0';
+            if (expected == '0' ? c < '0' || c > '9' : c != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+        return value;
+    }
+}
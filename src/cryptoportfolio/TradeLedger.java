@@ -0,0 +1,230 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of {@link Trade}s.
+ *
+ * Same framing as {@link LogHoldingStore}: a magic number and version,
+ * then records of {@code [length][crc32][payload]} so a torn tail is
+ * dropped on load. Trades are never edited or removed, so the file is
+ * never compacted. Appends are written by a background thread with one
+ * fsync per batch; {@link #appendAll} always lands as a single batch.
+ */
+class TradeLedger {
+
+    static final String FILE_NAME = "ledger.bin";
+
+    private static final int MAGIC = 0x4350544C; // "CPTL"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 6;
+    private static final List<Trade> CLOSE = Collections.emptyList();
+
+    private final File file;
+    private final LinkedBlockingQueue<List<Trade>> pending = new LinkedBlockingQueue<>();
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+    private FileChannel channel;
+    private Thread writerThread;
+
+    TradeLedger() {
+        this(new File(FILE_NAME));
+    }
+
+    TradeLedger(File file) {
+        this.file = file;
+    }
+
+    /** Reads every trade in file order and starts the background writer. */
+    List<Trade> load() throws IOException {
+        List<Trade> trades = file.exists() ? replay() : new ArrayList<>();
+        for (Trade trade : trades) {
+            keys.add(trade.key());
+        }
+        if (!file.exists()) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+            }
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        writerThread = new Thread(this::writeLoop, "trade-ledger-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "trade-ledger-shutdown"));
+        return trades;
+    }
+
+    void append(Trade trade) {
+        keys.add(trade.key());
+        pending.add(Collections.singletonList(trade));
+    }
+
+    void appendAll(Collection<Trade> trades) {
+        if (!trades.isEmpty()) {
+            for (Trade trade : trades) {
+                keys.add(trade.key());
+            }
+            pending.add(new ArrayList<>(trades));
+        }
+    }
+
+    /** Whether a trade with the same {@link Trade#key()} is already in the ledger. */
+    boolean contains(Trade trade) {
+        return keys.contains(trade.key());
+    }
+
+    /** Flushes queued trades and stops the writer. Safe to call twice. */
+    void close() {
+        Thread thread = writerThread;
+        if (thread == null || !thread.isAlive()) {
+            return;
+        }
+        pending.add(CLOSE);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<List<Trade>> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(pending.take());
+                pending.drainTo(batch);
+
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                for (List<Trade> trades : batch) {
+                    if (trades == CLOSE) {
+                        running = false;
+                        continue;
+                    }
+                    for (Trade trade : trades) {
+                        writeRecord(buffer, trade);
+                    }
+                }
+                channel.write(ByteBuffer.wrap(buffer.toByteArray()));
+                channel.force(false); // One fsync per batch
+            } catch (InterruptedException ex) {
+                running = false;
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            batch.clear();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private List<Trade> replay() throws IOException {
+        List<Trade> trades = new ArrayList<>();
+        long validLength = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a trade ledger: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported trade ledger version " + version);
+            }
+
+            byte[] payload = new byte[64];
+            while (true) {
+                int length;
+                int crc;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt();
+                    if (length < 0) {
+                        break; // Garbage length from a torn header
+                    }
+                    if (length > payload.length) {
+                        payload = new byte[length];
+                    }
+                    in.readFully(payload, 0, length);
+                } catch (EOFException ex) {
+                    break; // Clean end, or a torn record that never got fsynced
+                }
+                CRC32 check = new CRC32();
+                check.update(payload, 0, length);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                trades.add(readTrade(new DataInputStream(new ByteArrayInputStream(payload, 0, length))));
+                validLength += 8 + length;
+            }
+        }
+
+        if (validLength < file.length()) {
+            System.err.println("Dropping torn tail of " + file + " at byte " + validLength);
+            try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+            }
+        }
+        return trades;
+    }
+
+    private static Trade readTrade(DataInputStream in) throws IOException {
+        long timestamp = in.readLong();
+        int type = in.readByte();
+        if (type < 0 || type >= Trade.Type.values().length) {
+            throw new IOException("Unknown trade type " + type);
+        }
+        String coinId = in.readUTF();
+        double amount = in.readDouble();
+        double price = in.readDouble();
+        double fee = in.readDouble();
+        return new Trade(timestamp, Trade.Type.values()[type], coinId, amount, price, fee, in.readUTF());
+    }
+
+    private static void writeRecord(ByteArrayOutputStream target, Trade trade) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeLong(trade.timestamp);
+        payload.writeByte(trade.type.ordinal());
+        payload.writeUTF(trade.coinId);
+        payload.writeDouble(trade.amount);
+        payload.writeDouble(trade.priceUSD);
+        payload.writeDouble(trade.feeUSD);
+        payload.writeUTF(trade.reference);
+        byte[] bytes = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+}
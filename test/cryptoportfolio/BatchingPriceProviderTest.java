@@ -0,0 +1,126 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link BatchingPriceProvider}: how ids are split, and that
+ * batches fetched concurrently from a stub provider stay within the limit
+ * and all report back.
+ */
+public class BatchingPriceProviderTest {
+
+    /** Answers every id after a short delay and records how many calls overlap. */
+    private static class StubProvider implements PriceProvider {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        volatile String failOn;
+
+        @Override
+        public void fetchPrices(Collection<String> ids, PriceConsumer consumer) throws IOException {
+            calls.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                for (String id : ids) {
+                    if (id.equals(failOn)) {
+                        throw new IOException("HTTP 429");
+                    }
+                    consumer.accept(id, id.length(), 0.0);
+                }
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("coin-" + i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSplitByCount() {
+        BatchingPriceProvider provider = new BatchingPriceProvider(new StubProvider(), 3, 1000, 2);
+        List<List<String>> batches = provider.split(ids(7));
+        assertEquals(3, batches.size());
+        assertEquals(Arrays.asList("coin-0", "coin-1", "coin-2"), batches.get(0));
+        assertEquals(Arrays.asList("coin-6"), batches.get(2));
+        assertEquals(3, provider.requestCount(ids(7)));
+    }
+
+    @Test
+    public void testSplitByCharacters() {
+        // "coin-0,coin-1" is 13 characters, one more id would make 20
+        BatchingPriceProvider provider = new BatchingPriceProvider(new StubProvider(), 100, 19, 2);
+        List<List<String>> batches = provider.split(ids(5));
+        assertEquals(Arrays.asList(Arrays.asList("coin-0", "coin-1"), Arrays.asList("coin-2", "coin-3"),
+                Arrays.asList("coin-4")), batches);
+        for (List<String> batch : batches) {
+            assertTrue(String.join(",", batch).length() <= 19);
+        }
+    }
+
+    @Test
+    public void testSplitKeepsOversizedId() {
+        BatchingPriceProvider provider = new BatchingPriceProvider(new StubProvider(), 100, 4, 2);
+        assertEquals(Arrays.asList(Arrays.asList("a"), Arrays.asList("much-too-long"), Arrays.asList("b")),
+                provider.split(Arrays.asList("a", "much-too-long", "b")));
+    }
+
+    @Test
+    public void testSplitEmpty() {
+        BatchingPriceProvider provider = new BatchingPriceProvider(new StubProvider(), 10, 100, 2);
+        assertTrue(provider.split(Collections.<String>emptyList()).isEmpty());
+        assertEquals(0, provider.requestCount(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void testConcurrentFetch() throws IOException {
+        StubProvider stub = new StubProvider();
+        BatchingPriceProvider provider = new BatchingPriceProvider(stub, 10, 1800, 3);
+        Map<String, Double> prices = new ConcurrentHashMap<>();
+        provider.fetchPrices(ids(250), (id, price, change) -> prices.put(id, price));
+
+        assertEquals(25, stub.calls.get());
+        assertEquals(250, prices.size());
+        assertTrue("max in flight " + stub.maxRunning.get(), stub.maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void testFailureWaitsForOtherBatches() {
+        StubProvider stub = new StubProvider();
+        stub.failOn = "coin-5";
+        BatchingPriceProvider provider = new BatchingPriceProvider(stub, 10, 1800, 2);
+        Map<String, Double> prices = new ConcurrentHashMap<>();
+        try {
+            provider.fetchPrices(ids(100), (id, price, change) -> prices.put(id, price));
+            fail("Expected the batch failure to be reported");
+        } catch (IOException ex) {
+            assertEquals("HTTP 429", ex.getMessage());
+        }
+        // Every other batch still delivered its prices
+        assertEquals(95, prices.size());
+        assertEquals(0, stub.running.get());
+    }
+}
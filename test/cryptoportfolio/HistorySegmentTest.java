@@ -0,0 +1,117 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link HistorySegment}: series survive a write and read, regular
+ * series cost one byte per timestamp, and unrequested coins are skipped.
+ */
+public class HistorySegmentTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long START = 1_700_006_400_000L; // A UTC midnight
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("segment").toFile();
+        file = new File(new File(dir, "1m"), START + ".seg");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        file.getParentFile().delete();
+        dir.delete();
+    }
+
+    private static PriceSeries series(long[] times, double[] prices) {
+        PriceSeries series = new PriceSeries();
+        for (int i = 0; i < times.length; i++) {
+            series.put(times[i], prices[i]);
+        }
+        return series;
+    }
+
+    private static void assertSeries(PriceSeries expected, PriceSeries actual) {
+        assertEquals(expected.size, actual.size);
+        for (int i = 0; i < expected.size; i++) {
+            assertEquals(expected.times[i], actual.times[i]);
+            assertEquals(Double.doubleToLongBits(expected.prices[i]), Double.doubleToLongBits(actual.prices[i]));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        // Gaps of 1, 127, 128 and 20000 minutes take one, one, two and three varint bytes
+        PriceSeries bitcoin = series(
+                new long[]{START, START + MINUTE, START + 128 * MINUTE, START + 256 * MINUTE, START + 20256 * MINUTE},
+                new double[]{67012.5, 67013.25, Double.MIN_VALUE, 0.1 + 0.2, 1e300});
+        PriceSeries ethereum = series(new long[]{START + 5 * MINUTE}, new double[]{3200});
+        Map<String, PriceSeries> written = new HashMap<>();
+        written.put("bitcoin", bitcoin);
+        written.put("ethereum", ethereum);
+        written.put("empty", new PriceSeries());
+        HistorySegment.write(file, MINUTE, START, written);
+
+        Map<String, PriceSeries> read = HistorySegment.read(file, null);
+        assertEquals(2, read.size());
+        assertSeries(bitcoin, read.get("bitcoin"));
+        assertSeries(ethereum, read.get("ethereum"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testRegularSeriesSize() throws IOException {
+        PriceSeries minutes = new PriceSeries();
+        for (int i = 0; i < 1440; i++) {
+            minutes.put(START + i * MINUTE, 100 + i);
+        }
+        HistorySegment.write(file, MINUTE, START, Collections.singletonMap("bitcoin", minutes));
+        // Header, then id, count, length, first time, one byte per later time and the prices
+        long header = 4 + 2 + 8 + 8 + 4;
+        long block = 8 + 1439 + 8 * 1440;
+        assertEquals(header + (2 + "bitcoin".length()) + 4 + 4 + block, file.length());
+    }
+
+    @Test
+    public void testReadsOnlyRequestedCoins() throws IOException {
+        Map<String, PriceSeries> written = new HashMap<>();
+        for (String id : new String[]{"a", "b", "c"}) {
+            written.put(id, series(new long[]{START, START + 2 * MINUTE}, new double[]{id.charAt(0), 1}));
+        }
+        HistorySegment.write(file, MINUTE, START, written);
+        Map<String, PriceSeries> read = HistorySegment.read(file, Collections.singleton("b"));
+        assertEquals(Collections.singleton("b"), read.keySet());
+        assertSeries(written.get("b"), read.get("b"));
+    }
+
+    @Test
+    public void testMissingAndForeignFiles() throws IOException {
+        assertTrue(HistorySegment.read(file, null).isEmpty());
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        try {
+            HistorySegment.read(file, null);
+            fail("expected a foreign file to be rejected");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Not a history segment"));
+        }
+    }
+}
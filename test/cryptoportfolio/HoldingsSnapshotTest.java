@@ -0,0 +1,188 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link HoldingsSnapshot}: lot changes derived from the previous
+ * snapshot, and readers on other threads only ever seeing whole snapshots
+ * while one thread keeps publishing.
+ */
+public class HoldingsSnapshotTest {
+
+    private static final List<String> COINS = Arrays.asList("bitcoin", "ethereum", "solana", "cardano");
+    private static final double LOT = 1000.0;
+    private static final long STRESS_MILLIS = 1000;
+
+    // Written by one thread, read by many, as the tracker does with its snapshot
+    private volatile HoldingsSnapshot published = HoldingsSnapshot.EMPTY;
+
+    @Test
+    public void testLotChanges() {
+        HoldingsSnapshot snapshot = HoldingsSnapshot.EMPTY
+                .with("bitcoin", 1.0, 1)
+                .with("ethereum", 4.0, 1)
+                .with("bitcoin", 2.0, 1)
+                .with("bitcoin", 0.5, 0);
+        assertEquals(Arrays.asList("bitcoin", "ethereum"), new ArrayList<>(snapshot.ids()));
+        assertEquals(3.5, snapshot.amounts.get("bitcoin"), 0.0);
+
+        snapshot = snapshot.with("bitcoin", -1.5, -1);
+        assertEquals(2.0, snapshot.amounts.get("bitcoin"), 0.0);
+        snapshot = snapshot.with("ethereum", -4.0, -1);
+        assertFalse(snapshot.ids().contains("ethereum"));
+    }
+
+    @Test
+    public void testLastLotLeavesDespiteRounding() {
+        HoldingsSnapshot snapshot = HoldingsSnapshot.EMPTY
+                .with("bitcoin", 0.1, 1)
+                .with("bitcoin", 0.2, 1)
+                .with("bitcoin", -0.1, -1)
+                .with("bitcoin", -0.2, -1);
+        assertTrue(snapshot.amounts.isEmpty());
+    }
+
+    @Test
+    public void testEarlierSnapshotsUnchanged() {
+        HoldingsSnapshot before = HoldingsSnapshot.EMPTY.with("bitcoin", 1.0, 1);
+        HoldingsSnapshot after = before.with("bitcoin", 1.0, 0).with("solana", 3.0, 1);
+        assertEquals(1.0, before.amounts.get("bitcoin"), 0.0);
+        assertEquals(1, before.amounts.size());
+        assertEquals(2.0, after.amounts.get("bitcoin"), 0.0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAmountsReadOnly() {
+        HoldingsSnapshot.EMPTY.with("bitcoin", 1.0, 1).amounts.put("bitcoin", 2.0);
+    }
+
+    /**
+     * One writer moves single coins and whole lots between holdings and opens
+     * and closes an extra lot, publishing after every step; readers check
+     * that each snapshot they see adds up, holds exactly the coins it should
+     * and has lot counts that match the amounts.
+     */
+    @Test
+    public void testConcurrentPublishing() throws InterruptedException {
+        // Whole numbers keep every sum exact
+        HoldingsSnapshot start = HoldingsSnapshot.EMPTY;
+        for (String coin : COINS) {
+            start = start.with(coin, LOT, 1).with(coin, LOT, 1);
+        }
+        double total = COINS.size() * 2 * LOT;
+        int totalLots = COINS.size() * 2;
+        published = start;
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        int readerCount = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        CountDownLatch done = new CountDownLatch(readerCount + 1);
+
+        Thread writer = new Thread(() -> {
+            try {
+                HoldingsSnapshot snapshot = published;
+                long step = 0;
+                while (running.get()) {
+                    String from = COINS.get((int) (step % COINS.size()));
+                    String to = COINS.get((int) ((step + 1) % COINS.size()));
+                    snapshot = snapshot.with(from, -1.0, 0).with(to, 1.0, 0);
+                    // A lot moved on its own would leave one coin a lot short in between
+                    if (step % 5 == 0 && snapshot.lotCount(from) > 1) {
+                        snapshot = snapshot.with(from, -LOT, -1).with(to, LOT, 1);
+                    }
+                    if (step % 3 == 0) {
+                        snapshot = snapshot.with("dogecoin", 5.0, 1);
+                        published = snapshot;
+                        snapshot = snapshot.with("dogecoin", -5.0, -1);
+                    }
+                    published = snapshot;
+                    step++;
+                }
+            } catch (Throwable ex) {
+                failures.add(ex);
+            } finally {
+                done.countDown();
+            }
+        }, "snapshot-writer");
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < readerCount; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        HoldingsSnapshot snapshot = published;
+                        double sum = 0;
+                        int lots = 0;
+                        for (Map.Entry<String, Double> entry : snapshot.amounts.entrySet()) {
+                            String coin = entry.getKey();
+                            int count = snapshot.lotCount(coin);
+                            assertTrue(coin, count > 0);
+                            if (coin.equals("dogecoin")) {
+                                assertEquals(1, count);
+                                assertEquals(5.0, entry.getValue(), 0.0);
+                            } else {
+                                // Single coins only ever drift one either way of the whole lots
+                                assertEquals(coin, count * LOT, entry.getValue(), 1.0);
+                            }
+                            sum += entry.getValue();
+                            lots += count;
+                        }
+                        boolean extraLot = snapshot.ids().contains("dogecoin");
+                        assertEquals(extraLot ? total + 5.0 : total, sum, 0.0);
+                        assertEquals(extraLot ? totalLots + 1 : totalLots, lots);
+                        assertEquals(extraLot ? COINS.size() + 1 : COINS.size(), snapshot.ids().size());
+                        assertTrue(snapshot.ids().containsAll(COINS));
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                } finally {
+                    done.countDown();
+                }
+            }, "snapshot-reader-" + r));
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(STRESS_MILLIS);
+        running.set(false);
+        assertTrue("threads did not stop", done.await(10, TimeUnit.SECONDS));
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError("reader saw an inconsistent snapshot", failures.get(0));
+        }
+        assertTrue(reads.get() > 0);
+        assertEquals(total, sumOf(published), 0.0);
+        int lots = 0;
+        for (String coin : published.ids()) {
+            lots += published.lotCount(coin);
+        }
+        assertEquals(totalLots, lots);
+    }
+
+    private static double sumOf(HoldingsSnapshot snapshot) {
+        double sum = 0;
+        for (double amount : snapshot.amounts.values()) {
+            sum += amount;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link HoldingsTableModel}: coins are built from the store's
+ * totals and lots are only read when a coin needs them, the incremental
+ * resort after price changes matches a full sort, and rows are found again
+ * by key after they move.
+ */
+public class HoldingsTableModelTest {
+
+    private final AssetRegistry registry = new AssetRegistry(null);
+    private final PriceCache prices = new PriceCache(60000);
+    private File dir;
+    private CountingStore store;
+
+    /** A log store that counts how often the lots of a coin are read. */
+    private static final class CountingStore extends LogHoldingStore {
+        int lotReads;
+
+        CountingStore(File file, AssetRegistry registry) {
+            super(file, registry);
+        }
+
+        @Override
+        public List<CryptoHolding> lotsOf(String coinId) {
+            lotReads++;
+            return super.lotsOf(coinId);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("model").toFile();
+        store = new CountingStore(new File(dir, LogHoldingStore.FILE_NAME), registry);
+        store.load();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    private void price(String coinId, double priceUSD) {
+        PriceCache.Batch batch = prices.newBatch();
+        batch.accept(coinId, priceUSD, 0);
+        batch.commit();
+    }
+
+    /** Reads every cell of every row, as painting the whole table would. */
+    private static void paint(HoldingsTableModel model) {
+        for (int row = 0; row < model.getRowCount(); row++) {
+            model.getValueAt(row, HoldingsTableModel.COL_NAME);
+            model.nameAt(row);
+            for (int column = HoldingsTableModel.COL_AMOUNT; column <= HoldingsTableModel.COL_CHANGE; column++) {
+                model.numberAt(row, column);
+            }
+        }
+    }
+
+    @Test
+    public void testBuiltFromTotals() {
+        for (int i = 0; i < 10; i++) {
+            store.add(new CryptoHolding(i % 2 == 0 ? "bitcoin" : "ethereum", 1.0 + i));
+        }
+        price("bitcoin", 100);
+        price("ethereum", 10);
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+        model.refresh();
+        paint(model);
+
+        assertEquals(0, store.lotReads);
+        assertEquals(2, model.getRowCount());
+        int bitcoin = model.rowOf("bitcoin");
+        assertEquals(25.0, model.numberAt(bitcoin, HoldingsTableModel.COL_AMOUNT), 0.0);
+        assertEquals(5, model.lotCount(bitcoin));
+        assertEquals(2500.0 + 300.0, model.totalValue(), 1e-9);
+    }
+
+    @Test
+    public void testLotsReadOnceOnExpand() {
+        store.add(new CryptoHolding("bitcoin", 1.0));
+        store.add(new CryptoHolding("bitcoin", 2.0));
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+
+        model.setExpanded(0, true);
+        paint(model);
+        model.setExpanded(0, false);
+        model.setExpanded(0, true);
+        assertEquals(1, store.lotReads);
+        assertEquals(3, model.getRowCount());
+        assertEquals(2.0, model.numberAt(2, HoldingsTableModel.COL_AMOUNT), 0.0);
+    }
+
+    @Test
+    public void testChangesBeforeLotsAreRead() {
+        store.add(new CryptoHolding("bitcoin", 1.0));
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+
+        CryptoHolding added = new CryptoHolding("bitcoin", 2.0);
+        store.add(added);
+        model.holdingAdded(added);
+        CryptoHolding first = store.lotsOf("bitcoin").get(0);
+        store.remove(first.index);
+        model.holdingRemoved(first);
+        assertEquals(1, store.lotReads);
+
+        assertEquals(1, model.getRowCount());
+        assertEquals(1, model.lotCount(0));
+        assertEquals(2.0, model.numberAt(0, HoldingsTableModel.COL_AMOUNT), 0.0);
+        assertSame(added, model.holdingAt(0));
+        List<CryptoHolding> lots = new ArrayList<>(model.lotsAt(0));
+        assertEquals(1, lots.size());
+    }
+
+    private static String coin(int i) {
+        return String.format(Locale.ROOT, "coin-%03d", i);
+    }
+
+    /** Coins with random amounts, prices and changes; every tenth coin has three lots. */
+    private void randomPortfolio(Random random, int coins) {
+        PriceCache.Batch batch = prices.newBatch();
+        for (int i = 0; i < coins; i++) {
+            for (int lot = i % 10 == 0 ? 3 : 1; lot > 0; lot--) {
+                store.add(new CryptoHolding(coin(i), 1 + random.nextInt(50)));
+            }
+            // Coarse prices, so ties and the tie-break are exercised too
+            batch.accept(coin(i), 1 + random.nextInt(200), random.nextInt(21) - 10);
+        }
+        batch.commit();
+    }
+
+    private static void sort(HoldingsTableModel model, int column, boolean ascending) {
+        model.sortBy(column);
+        if (model.isSortAscending() != ascending) {
+            model.sortBy(column);
+        }
+    }
+
+    /** A model built and sorted from scratch, the way the incremental one should look. */
+    private HoldingsTableModel fullySorted(int column, boolean ascending, String filter, String expanded) {
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+        model.refresh();
+        sort(model, column, ascending);
+        model.setFilter(filter);
+        if (model.rowOf(expanded) >= 0) {
+            model.setExpanded(model.rowOf(expanded), true);
+        }
+        return model;
+    }
+
+    private static void assertSameRows(HoldingsTableModel expected, HoldingsTableModel actual) {
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        for (int row = 0; row < expected.getRowCount(); row++) {
+            assertEquals("row " + row, expected.rowKey(row), actual.rowKey(row));
+        }
+    }
+
+    private void checkResort(int column, boolean ascending, String filter) {
+        Random random = new Random(column * 31 + (ascending ? 1 : 0));
+        randomPortfolio(random, 500);
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+        model.refresh();
+        sort(model, column, ascending);
+        model.setFilter(filter);
+        String expanded = coin(100);
+        if (model.rowOf(expanded) >= 0) {
+            model.setExpanded(model.rowOf(expanded), true);
+        }
+
+        for (int round = 0; round < 60; round++) {
+            // A few small moves (swaps), up to 32 big jumps (reinsertion) or many coins (full sort)
+            int changes = round % 3 == 0 ? 1 + random.nextInt(5) : round % 3 == 1 ? 10 + random.nextInt(23)
+                    : 40 + random.nextInt(200);
+            List<String> changed = new ArrayList<>();
+            PriceCache.Batch batch = prices.newBatch();
+            for (int i = 0; i < changes; i++) {
+                String id = coin(random.nextInt(500));
+                PriceCache.Entry entry = prices.get(id);
+                double price = round % 3 == 0 ? entry.priceUSD * (0.98 + random.nextDouble() * 0.04)
+                        : 1 + random.nextInt(200);
+                batch.accept(id, price, random.nextInt(21) - 10);
+                changed.add(id);
+            }
+            batch.commit();
+            if (round % 2 == 0) {
+                model.refresh();
+            } else {
+                model.refreshCoins(changed);
+            }
+            assertSameRows(fullySorted(column, ascending, filter, expanded), model);
+        }
+    }
+
+    @Test
+    public void testResortByPriceMatchesFullSort() {
+        checkResort(HoldingsTableModel.COL_PRICE, false, "");
+    }
+
+    @Test
+    public void testResortByValueMatchesFullSort() {
+        checkResort(HoldingsTableModel.COL_VALUE, true, "");
+    }
+
+    @Test
+    public void testResortByChangeWithFilterMatchesFullSort() {
+        checkResort(HoldingsTableModel.COL_CHANGE, false, "coin-1");
+    }
+
+    @Test
+    public void testRowKeysFollowMoves() {
+        for (int i = 0; i < 6; i++) {
+            store.add(new CryptoHolding(coin(i), 1));
+            price(coin(i), 10 + i);
+        }
+        store.add(new CryptoHolding(coin(0), 2));
+        store.add(new CryptoHolding(coin(0), 3));
+        HoldingsTableModel model = new HoldingsTableModel(store, prices, registry);
+        model.refresh();
+        model.sortBy(HoldingsTableModel.COL_PRICE); // Largest first, so coin-000 is last
+        model.setExpanded(model.rowOf(coin(0)), true);
+        assertEquals(9, model.getRowCount());
+        Object lot = model.rowKey(7);
+        assertSame(store.lotsOf(coin(0)).get(1), lot);
+        assertEquals(7, model.rowOf(lot));
+
+        // The table keeps the same lot and coin selected while they move
+        HoldingsTable table = new HoldingsTable(model);
+        table.setRowSelectionInterval(7, 7);
+        table.addRowSelectionInterval(0, 0);
+        price(coin(0), 100);
+        price(coin(5), 1);
+        model.refresh();
+        assertEquals(0, model.rowOf(coin(0)));
+        assertEquals(2, model.rowOf(lot));
+        assertEquals(8, model.rowOf(coin(5)));
+        int[] expected = {2, 8};
+        assertArrayEquals(expected, table.getSelectedRows());
+
+        // Hidden rows have no row, and are selected again once they show
+        model.setFilter("coin-000");
+        assertEquals(-1, model.rowOf(coin(5)));
+        assertArrayEquals(new int[]{2}, table.getSelectedRows());
+        model.setFilter("");
+        assertArrayEquals(expected, table.getSelectedRows());
+        model.setExpanded(0, false);
+        assertEquals(-1, model.rowOf(lot));
+        assertArrayEquals(new int[]{model.rowOf(coin(5))}, table.getSelectedRows());
+    }
+}
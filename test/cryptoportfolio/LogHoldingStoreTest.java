@@ -0,0 +1,161 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LogHoldingStore}: changes survive a reload, and a torn
+ * or corrupt tail is dropped instead of failing the load.
+ */
+public class LogHoldingStoreTest {
+
+    private final AssetRegistry registry = new AssetRegistry(null);
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("holdings").toFile();
+        file = new File(dir, LogHoldingStore.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    /** Saves bitcoin 1.5 and ethereum 4, after an edit and a remove, and returns the file size. */
+    private long writeSample() throws IOException {
+        LogHoldingStore store = new LogHoldingStore(file, registry);
+        store.load();
+        store.add(new CryptoHolding("bitcoin", 1.0));
+        store.add(new CryptoHolding("solana", 7.0));
+        store.add(new CryptoHolding("ethereum", 4.0));
+        store.update(0, 1.5);
+        store.remove(1);
+        store.close();
+        return file.length();
+    }
+
+    private List<CryptoHolding> reload() throws IOException {
+        LogHoldingStore store = new LogHoldingStore(file, registry);
+        try {
+            return store.load();
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void assertSample(List<CryptoHolding> holdings) {
+        assertEquals(2, holdings.size());
+        assertEquals("bitcoin", holdings.get(0).coinId);
+        assertEquals(1.5, holdings.get(0).amount, 0.0);
+        assertEquals("ethereum", holdings.get(1).coinId);
+        assertEquals(4.0, holdings.get(1).amount, 0.0);
+    }
+
+    private void appendTail(int length, int crc, byte[] payload) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+            out.writeInt(length);
+            out.writeInt(crc);
+            out.write(payload);
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        writeSample();
+        assertSample(reload());
+    }
+
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        long valid = writeSample();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(valid - 3); // Cut into the last record
+        }
+        List<CryptoHolding> holdings = reload();
+        // The remove was the last record, so solana is back
+        assertEquals(3, holdings.size());
+        assertEquals("solana", holdings.get(1).coinId);
+    }
+
+    @Test
+    public void testNegativeLength() throws IOException {
+        long valid = writeSample();
+        appendTail(-5, 0, new byte[16]);
+        assertSample(reload());
+        assertEquals(valid, file.length());
+    }
+
+    @Test
+    public void testHugeLength() throws IOException {
+        long valid = writeSample();
+        appendTail(Integer.MAX_VALUE, 0, new byte[16]);
+        assertSample(reload());
+        assertEquals(valid, file.length());
+    }
+
+    @Test
+    public void testBadChecksum() throws IOException {
+        long valid = writeSample();
+        appendTail(4, 0x12345678, new byte[]{3, 0, 0, 0});
+        assertSample(reload());
+        assertEquals(valid, file.length());
+    }
+
+    @Test
+    public void testAppendAfterDroppedTail() throws IOException {
+        writeSample();
+        appendTail(-1, -1, new byte[3]);
+        LogHoldingStore store = new LogHoldingStore(file, registry);
+        store.load();
+        store.add(new CryptoHolding("cardano", 10.0));
+        store.close();
+
+        List<CryptoHolding> holdings = reload();
+        assertEquals(3, holdings.size());
+        assertEquals("cardano", holdings.get(2).coinId);
+    }
+
+    @Test
+    public void testIndexFollowsRemovals() throws IOException {
+        LogHoldingStore store = new LogHoldingStore(file, registry);
+        List<CryptoHolding> holdings = store.load();
+        CryptoHolding bitcoin = new CryptoHolding("bitcoin", 1.0);
+        CryptoHolding solana = new CryptoHolding("solana", 7.0);
+        CryptoHolding ethereum = new CryptoHolding("ethereum", 4.0);
+        store.add(bitcoin);
+        store.add(solana);
+        store.add(ethereum);
+        assertEquals(2, ethereum.index);
+
+        store.remove(solana.index);
+        store.close();
+        assertEquals(0, bitcoin.index);
+        assertEquals(1, ethereum.index);
+        assertSame(ethereum, holdings.get(ethereum.index));
+
+        List<CryptoHolding> reloaded = reload();
+        for (int i = 0; i < reloaded.size(); i++) {
+            assertEquals(i, reloaded.get(i).index);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link MappedHoldingStore}: changes survive a reopen, per-coin
+ * totals come from the saved summary unless the last run did not close,
+ * and a corrupt count or id length is reported instead of read past.
+ */
+public class MappedHoldingStoreTest {
+
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEADER_SIZE = 12;
+
+    private final AssetRegistry registry = new AssetRegistry(null);
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mapped").toFile();
+        file = new File(dir, MappedHoldingStore.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    /** Saves bitcoin 1.5 and ethereum 4, after an edit and a remove. */
+    private void writeSample() throws IOException {
+        MappedHoldingStore store = new MappedHoldingStore(file, registry);
+        store.load();
+        store.add(new CryptoHolding("bitcoin", 1.0));
+        store.add(new CryptoHolding("solana", 7.0));
+        store.add(new CryptoHolding("ethereum", 4.0));
+        store.update(0, 1.5);
+        store.remove(1);
+        store.close();
+    }
+
+    private void assertCorrupt() {
+        MappedHoldingStore store = new MappedHoldingStore(file, registry);
+        try {
+            List<CryptoHolding> holdings = store.load();
+            holdings.get(0);
+            fail("expected the corrupt file to be reported");
+        } catch (IOException | UncheckedIOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Corrupt holdings file"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        writeSample();
+        MappedHoldingStore store = new MappedHoldingStore(file, registry);
+        List<CryptoHolding> holdings = store.load();
+        store.close();
+        assertEquals(2, holdings.size());
+        assertEquals("bitcoin", holdings.get(0).coinId);
+        assertEquals(1.5, holdings.get(0).amount, 0.0);
+        assertEquals("ethereum", holdings.get(1).coinId);
+        assertEquals(1, holdings.get(1).index);
+    }
+
+    @Test
+    public void testCountBeyondFile() throws IOException {
+        writeSample();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(COUNT_OFFSET);
+            raw.writeInt(1 << 30);
+        }
+        assertCorrupt();
+    }
+
+    @Test
+    public void testNegativeCount() throws IOException {
+        writeSample();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(COUNT_OFFSET);
+            raw.writeInt(-1);
+        }
+        assertCorrupt();
+    }
+
+    @Test
+    public void testBadIdLength() throws IOException {
+        for (short length : new short[]{-5, 200}) {
+            writeSample();
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.seek(HEADER_SIZE);
+                raw.writeShort(length);
+            }
+            assertCorrupt();
+            tearDown();
+            setUp();
+        }
+    }
+
+    @Test
+    public void testTotalsFromSummary() throws IOException {
+        writeSample();
+        // A doctored summary shows the totals are read from it, not summed from the records
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file.getPath() + ".sum"))) {
+            out.writeInt(0x43505446);
+            out.writeInt(2);
+            out.writeInt(1);
+            out.writeUTF("bitcoin");
+            out.writeDouble(99.0);
+            out.writeInt(2);
+        }
+        assertEquals(99.0, reopenTotals().amounts.get("bitcoin"), 0.0);
+    }
+
+    @Test
+    public void testTotalsAfterCrash() throws IOException {
+        writeSample();
+        // Opening clears the clean flag until the next close, as a crash would leave it
+        MappedHoldingStore crashed = new MappedHoldingStore(file, registry);
+        crashed.load();
+        crashed.add(new CryptoHolding("bitcoin", 2.0));
+        HoldingsSnapshot totals = reopenTotals();
+        assertEquals(3.5, totals.amounts.get("bitcoin"), 0.0);
+        assertEquals(2, totals.lotCount("bitcoin"));
+        assertEquals(4.0, totals.amounts.get("ethereum"), 0.0);
+        crashed.close();
+    }
+
+    @Test
+    public void testTotalsFollowChanges() throws IOException {
+        writeSample();
+        HoldingsSnapshot totals = reopenTotals();
+        assertEquals(Arrays.asList("bitcoin", "ethereum"), new ArrayList<>(totals.ids()));
+        assertEquals(1.5, totals.amounts.get("bitcoin"), 0.0);
+        assertEquals(1, totals.lotCount("ethereum"));
+        assertFalse(totals.ids().contains("solana"));
+    }
+
+    @Test
+    public void testLotsOf() throws IOException {
+        writeSample();
+        MappedHoldingStore store = new MappedHoldingStore(file, registry);
+        List<CryptoHolding> holdings = store.load();
+        store.add(new CryptoHolding("ethereum", 6.0));
+        List<CryptoHolding> lots = store.lotsOf("ethereum");
+        store.close();
+        assertEquals(2, lots.size());
+        assertSame(holdings.get(1), lots.get(0));
+        assertEquals(6.0, lots.get(1).amount, 0.0);
+    }
+
+    private HoldingsSnapshot reopenTotals() throws IOException {
+        MappedHoldingStore store = new MappedHoldingStore(file, registry);
+        store.load();
+        try {
+            return store.totals();
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Position}: lot matching for each method, fees, transfers
+ * and sells beyond the open lots, against results worked out by hand.
+ */
+public class PositionTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static Trade trade(long timestamp, Trade.Type type, double amount, double price, double fee) {
+        return new Trade(timestamp, type, "bitcoin", amount, price, fee, "");
+    }
+
+    /** Buys 1 at 100 with a 2 fee and 2 at 130, then sells 1.5 at 200 with a 5 fee. */
+    private static Position buyBuySell(Position.Method method) {
+        Position position = new Position(method);
+        position.apply(trade(1, Trade.Type.BUY, 1, 100, 2));
+        position.apply(trade(2, Trade.Type.BUY, 2, 130, 0));
+        position.apply(trade(3, Trade.Type.SELL, 1.5, 200, 5));
+        return position;
+    }
+
+    @Test
+    public void testFifo() {
+        Position position = buyBuySell(Position.Method.FIFO);
+        // The sale takes all of the first lot (102) and half a coin of the second (65)
+        assertEquals(300 - 102 - 65 - 5, position.realized(), DELTA);
+        assertEquals(1.5, position.quantity(), DELTA);
+        List<Position.Lot> lots = position.lots();
+        assertEquals(1, lots.size());
+        assertEquals(2, lots.get(0).timestamp);
+        assertEquals(1.5, lots.get(0).amount, DELTA);
+        assertEquals(195, lots.get(0).cost, DELTA);
+        assertEquals(225 - 195, position.unrealized(150), DELTA);
+        assertEquals(3, position.lastTimestamp());
+    }
+
+    @Test
+    public void testLifo() {
+        Position position = buyBuySell(Position.Method.LIFO);
+        // The sale takes 1.5 of the 2 coins bought last, at 130 each
+        assertEquals(300 - 195 - 5, position.realized(), DELTA);
+        List<Position.Lot> lots = position.lots();
+        assertEquals(2, lots.size());
+        assertEquals(1, lots.get(0).amount, DELTA);
+        assertEquals(102, lots.get(0).cost, DELTA);
+        assertEquals(0.5, lots.get(1).amount, DELTA);
+        assertEquals(65, lots.get(1).cost, DELTA);
+        assertEquals(225 - 167, position.unrealized(150), DELTA);
+    }
+
+    @Test
+    public void testAverage() {
+        Position position = buyBuySell(Position.Method.AVERAGE);
+        // One pool of 3 coins costing 362, half of it sold
+        assertEquals(300 - 181 - 5, position.realized(), DELTA);
+        List<Position.Lot> lots = position.lots();
+        assertEquals(1, lots.size());
+        assertEquals(1.5, lots.get(0).amount, DELTA);
+        assertEquals(181, lots.get(0).cost, DELTA);
+        assertEquals(225 - 181, position.unrealized(150), DELTA);
+    }
+
+    @Test
+    public void testTransfersAndFees() {
+        Position position = new Position(Position.Method.FIFO);
+        position.apply(trade(1, Trade.Type.TRANSFER_IN, 2, 50, 1));
+        assertEquals(-1, position.realized(), DELTA);
+        assertEquals(100, position.lots().get(0).cost, DELTA);
+
+        // Moving coins out carries their cost away without realizing it
+        position.apply(trade(2, Trade.Type.TRANSFER_OUT, 0.5, 80, 0.5));
+        assertEquals(-1.5, position.realized(), DELTA);
+        assertEquals(1.5, position.quantity(), DELTA);
+
+        // Coins spent as a fee realize their cost as a loss
+        position.apply(trade(3, Trade.Type.FEE, 0.5, 80, 0));
+        assertEquals(-1.5 - 25, position.realized(), DELTA);
+        assertEquals(1, position.quantity(), DELTA);
+        assertEquals(60 - 50, position.unrealized(60), DELTA);
+    }
+
+    @Test
+    public void testOversellIsClamped() {
+        Position position = new Position(Position.Method.FIFO);
+        position.apply(trade(1, Trade.Type.BUY, 1, 100, 0));
+        position.apply(trade(2, Trade.Type.SELL, 3, 150, 0));
+        // Only the coin with a known cost counts
+        assertEquals(50, position.realized(), DELTA);
+        assertEquals(0, position.quantity(), 0.0);
+        assertTrue(position.lots().isEmpty());
+        assertEquals(0, position.unrealized(150), 0.0);
+
+        // The missing two coins are not carried as a short position
+        position.apply(trade(3, Trade.Type.BUY, 1, 80, 0));
+        assertEquals(1, position.quantity(), DELTA);
+        assertEquals(20, position.unrealized(100), DELTA);
+    }
+
+    @Test
+    public void testPartialLots() {
+        Position position = new Position(Position.Method.FIFO);
+        position.apply(trade(1, Trade.Type.BUY, 3, 10, 0));
+        position.apply(trade(2, Trade.Type.SELL, 1, 12, 0));
+        position.apply(trade(3, Trade.Type.SELL, 1, 14, 0));
+        assertEquals(2 + 4, position.realized(), DELTA);
+        List<Position.Lot> lots = position.lots();
+        assertEquals(1, lots.size());
+        assertEquals(1, lots.get(0).amount, DELTA);
+        assertEquals(10, lots.get(0).cost, DELTA);
+
+        // lots() hands out copies
+        lots.get(0).amount = 99;
+        assertEquals(1, position.lots().get(0).amount, DELTA);
+    }
+}
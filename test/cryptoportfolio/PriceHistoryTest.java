@@ -0,0 +1,158 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PriceHistory} on a temp dir with a fixed clock: recording,
+ * sealing a finished day, compaction into hourly and daily tiers, range
+ * queries with fill-forward, and recovery from a torn journal tail.
+ */
+public class PriceHistoryTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long TODAY = 1_700_006_400_000L; // A UTC midnight
+
+    private final PriceCache cache = new PriceCache(60000);
+    private final AtomicLong now = new AtomicLong();
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private PriceHistory start() throws IOException {
+        PriceHistory history = new PriceHistory(dir, cache, now::get);
+        history.start();
+        return history;
+    }
+
+    private static void assertPoints(PriceSeries series, long... timesAndPrices) {
+        assertEquals(timesAndPrices.length / 2, series.size);
+        for (int i = 0; i < series.size; i++) {
+            assertEquals("time " + i, timesAndPrices[2 * i], series.times[i]);
+            assertEquals("price " + i, timesAndPrices[2 * i + 1], series.prices[i], 0.0);
+        }
+    }
+
+    private static void journal(DataOutputStream out, long time, double price) throws IOException {
+        out.writeUTF("bitcoin");
+        out.writeLong(time);
+        out.writeDouble(price);
+    }
+
+    @Test
+    public void testRecordSealAndReplay() throws IOException {
+        now.set(TODAY + 10 * HOUR);
+        PriceHistory history = start();
+        history.record("bitcoin", TODAY + HOUR + 10_000, 1);
+        history.record("bitcoin", TODAY + HOUR + 50_000, 2); // Same minute, replaces the first
+        history.record("bitcoin", TODAY + 2 * HOUR, 3);
+        history.record("bitcoin", TODAY - HOUR, 9); // Before the open day, dropped
+        assertPoints(history.query("bitcoin", TODAY, TODAY + DAY), TODAY + HOUR, 2, TODAY + 2 * HOUR, 3);
+        history.flush();
+
+        // The next flush after midnight seals the day into a minute segment
+        now.set(TODAY + DAY + HOUR);
+        history.record("bitcoin", TODAY + DAY + 5 * MINUTE, 4);
+        history.flush();
+        assertTrue(new File(dir, "1m/" + TODAY + ".seg").exists());
+        assertPoints(history.query("bitcoin", TODAY, TODAY + 2 * DAY),
+                TODAY + HOUR, 2, TODAY + 2 * HOUR, 3, TODAY + DAY + 5 * MINUTE, 4);
+
+        // A restart reads the sealed day from its segment and the new one from the journal
+        PriceHistory reopened = start();
+        assertPoints(reopened.query("bitcoin", TODAY, TODAY + 2 * DAY),
+                TODAY + HOUR, 2, TODAY + 2 * HOUR, 3, TODAY + DAY + 5 * MINUTE, 4);
+    }
+
+    @Test
+    public void testCompactionAndTornJournal() throws IOException {
+        long old = TODAY - 200 * DAY;
+        long mid = TODAY - 10 * DAY;
+        long yesterday = TODAY - DAY;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, "journal.log")))) {
+            journal(out, old + 10 * MINUTE, 1);
+            journal(out, old + 50 * MINUTE, 2);
+            journal(out, old + 5 * HOUR, 3);
+            journal(out, old + 20 * HOUR, 4);
+            journal(out, mid + 10 * MINUTE, 5);
+            journal(out, mid + 50 * MINUTE, 6);
+            journal(out, mid + 2 * HOUR, 7);
+            journal(out, yesterday + HOUR, 8);
+            journal(out, TODAY + HOUR, 9);
+            // A record cut short by a crash
+            out.writeUTF("bitcoin");
+            out.write(new byte[3]);
+        }
+        now.set(TODAY + 12 * HOUR);
+        PriceHistory history = start();
+
+        // Two days of minutes, 90 days of hours, days beyond that
+        assertArrayEquals(new String[]{yesterday + ".seg"}, new File(dir, "1m").list());
+        long hourWindow = Math.floorDiv(mid, 32 * DAY) * 32 * DAY;
+        assertArrayEquals(new String[]{hourWindow + ".seg"}, new File(dir, "1h").list());
+        long dayWindow = Math.floorDiv(old, 512 * DAY) * 512 * DAY;
+        assertArrayEquals(new String[]{dayWindow + ".seg"}, new File(dir, "1d").list());
+
+        assertPoints(history.query("bitcoin", old, old + DAY), old, 4);
+        assertPoints(history.query("bitcoin", mid, mid + DAY), mid, 6, mid + 2 * HOUR, 7);
+        // Nothing changed in the first hour of yesterday, so the range starts at the price before it
+        assertPoints(history.query("bitcoin", yesterday, TODAY + DAY),
+                yesterday, 7, yesterday + HOUR, 8, TODAY + HOUR, 9);
+        assertPoints(history.query("bitcoin", 1, TODAY + DAY),
+                old, 4, mid, 6, mid + 2 * HOUR, 7, yesterday + HOUR, 8, TODAY + HOUR, 9);
+
+        // Only today's complete record is left in the journal
+        assertEquals(2 + "bitcoin".length() + 8 + 8, new File(dir, "journal.log").length());
+    }
+
+    @Test
+    public void testFillForward() throws IOException {
+        long old = TODAY - 200 * DAY;
+        long mid = TODAY - 10 * DAY;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, "journal.log")))) {
+            journal(out, old + HOUR, 4);
+            journal(out, mid + HOUR, 7);
+            journal(out, TODAY - DAY + HOUR, 8);
+            journal(out, TODAY + HOUR, 9);
+        }
+        now.set(TODAY + 12 * HOUR);
+        PriceHistory history = start();
+
+        // Unchanged prices leave gaps; each range starts from the last earlier price
+        assertPoints(history.query("bitcoin", old + 30 * DAY, old + 31 * DAY), old + 30 * DAY, 4);
+        assertPoints(history.query("bitcoin", mid + 5 * DAY, mid + 6 * DAY), mid + 5 * DAY, 7);
+        assertPoints(history.query("bitcoin", TODAY - HOUR, TODAY + 2 * HOUR),
+                TODAY - HOUR, 8, TODAY + HOUR, 9);
+        assertPoints(history.query("bitcoin", TODAY + 2 * HOUR, TODAY + 3 * HOUR), TODAY + 2 * HOUR, 9);
+        assertPoints(history.query("bitcoin", old - DAY, old));
+        assertPoints(history.query("ethereum", TODAY, TODAY + DAY));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PriceJsonParser}: the response shapes it has to accept
+ * and both number paths, which must agree with {@link Double#parseDouble}
+ * to the last bit.
+ */
+public class PriceJsonParserTest {
+
+    private static List<Object[]> parse(String json) throws IOException {
+        return parse(new StringReader(json));
+    }
+
+    private static List<Object[]> parse(Reader reader) throws IOException {
+        List<Object[]> coins = new ArrayList<>();
+        PriceJsonParser.parse(reader, (id, price, change) -> coins.add(new Object[]{id, price, change}));
+        return coins;
+    }
+
+    /** The price the parser reads for a number written as {@code literal}. */
+    private static double parsePrice(String literal) throws IOException {
+        List<Object[]> coins = parse("{\"c\":{\"usd\":" + literal + "}}");
+        assertEquals(1, coins.size());
+        return (Double) coins.get(0)[1];
+    }
+
+    private static void assertSameAsJdk(String literal) throws IOException {
+        double expected = Double.parseDouble(literal);
+        double actual = parsePrice(literal);
+        assertEquals(literal, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+    }
+
+    @Test
+    public void testPricesAndChanges() throws IOException {
+        List<Object[]> coins = parse("{\"bitcoin\":{\"usd\":67012.5,\"usd_24h_change\":-1.25},"
+                + " \"ethereum\" : { \"usd_24h_change\" : 3 , \"usd\" : 3200 } }");
+        assertEquals(2, coins.size());
+        assertArrayEquals(new Object[]{"bitcoin", 67012.5, -1.25}, coins.get(0));
+        assertArrayEquals(new Object[]{"ethereum", 3200.0, 3.0}, coins.get(1));
+    }
+
+    @Test
+    public void testNullsAndMissingFields() throws IOException {
+        List<Object[]> coins = parse("{\"a\":{\"usd\":1.5,\"usd_24h_change\":null},"
+                + "\"b\":{\"usd\":null},\"c\":{},\"d\":{\"usd_24h_change\":2}}");
+        assertEquals(1, coins.size());
+        assertArrayEquals(new Object[]{"a", 1.5, 0.0}, coins.get(0));
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() throws IOException {
+        List<Object[]> coins = parse("{\"status\":\"ok\",\"a\":{\"eur\":[1,{\"x\":\"}]\\\"\"}],"
+                + "\"usd\":2,\"meta\":{\"nested\":{\"usd\":99}},\"live\":true,\"note\":\"\\u00e9\"}}");
+        assertEquals(1, coins.size());
+        assertArrayEquals(new Object[]{"a", 2.0, 0.0}, coins.get(0));
+    }
+
+    @Test
+    public void testEmptyResponse() throws IOException {
+        assertTrue(parse(" { } ").isEmpty());
+    }
+
+    @Test
+    public void testExactPath() throws IOException {
+        for (String literal : new String[]{"0", "-0", "1", "0.1", "0.000001234", "123456789012345",
+                "9007199254740991", "67012.53", "-99.999999", "0.30000000000000004"}) {
+            assertSameAsJdk(literal);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long mantissa = random.nextLong() >>> (11 + random.nextInt(40));
+            int scale = random.nextInt(16);
+            StringBuilder literal = new StringBuilder(Long.toString(mantissa));
+            while (literal.length() <= scale) {
+                literal.insert(0, '0');
+            }
+            if (scale > 0) {
+                literal.insert(literal.length() - scale, '.');
+            }
+            assertSameAsJdk(literal.toString());
+        }
+    }
+
+    @Test
+    public void testSlowPath() throws IOException {
+        for (String literal : new String[]{"1e3", "1.5E-7", "-2.5e+10", "6.02214076e23",
+                "0.12345678901234567891", "123456789012345678901234567890", "9007199254740993",
+                "1.00000000000000000000001", "4.9e-324", "1.7976931348623157e308"}) {
+            assertSameAsJdk(literal);
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            assertSameAsJdk(Double.toString(Double.longBitsToDouble(random.nextLong() & 0x7fefffffffffffffL)));
+        }
+    }
+
+    @Test
+    public void testChunkedReader() throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("\"coin-").append(i).append("\":{\"usd\":")
+                    .append(i).append(".25,\"usd_24h_change\":-0.").append(i).append('}');
+        }
+        json.append('}');
+        // Hands out a few chars at a time so tokens straddle every refill
+        Reader trickle = new StringReader(json.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 3));
+            }
+        };
+        List<Object[]> coins = parse(trickle);
+        assertEquals(2000, coins.size());
+        assertArrayEquals(new Object[]{"coin-1999", 1999.25, -0.1999}, coins.get(1999));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedResponse() throws IOException {
+        parse("{\"a\":{\"usd\":1");
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingSeparator() throws IOException {
+        parse("{\"a\":{\"usd\":1 \"usd_24h_change\":2}}");
+    }
+
+    @Test
+    public void testMalformedNumber() {
+        try {
+            parse("{\"a\":{\"usd\":1e+-5}}");
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("offset 17: Bad number 1e+-5"));
+        }
+    }
+
+    @Test
+    public void testMalformedEscape() {
+        try {
+            parse("{\"a\\uZZ12\":{\"usd\":1}}");
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("uZZ12"));
+        }
+    }
+
+    @Test
+    public void testRates() throws IOException {
+        List<String> rates = new ArrayList<>();
+        PriceJsonParser.parseRates(new StringReader("{\"rates\":{"
+                + "\"btc\":{\"name\":\"Bitcoin\",\"unit\":\"BTC\",\"value\":1,\"type\":\"crypto\"},"
+                + "\"eur\":{\"name\":\"Euro\",\"unit\":\"\\u20ac\",\"value\":61234.5,\"type\":\"fiat\"},"
+                + "\"bad\":{\"unit\":\"?\",\"value\":null,\"type\":\"fiat\"},"
+                + "\"xau\":{\"extra\":{\"value\":5},\"value\":25.1,\"type\":\"commodity\"}}}"),
+                (code, unit, type, perBtc) -> rates.add(code + " " + unit + " " + type + " " + perBtc));
+        assertEquals(List.of("btc BTC crypto 1.0", "eur \u20ac fiat 61234.5", "xau XAU commodity 25.1"), rates);
+    }
+}
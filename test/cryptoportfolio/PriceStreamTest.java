@@ -0,0 +1,205 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PriceStream}: bursts of ticks reach the cache as one
+ * batch per flush with only the latest tick of each coin, both when fed
+ * directly and from a {@link LocalTickerServer} on an ephemeral port, and
+ * the stream reconnects after the feed drops and goes quiet once closed.
+ */
+public class PriceStreamTest {
+
+    private static final List<String> COINS = Arrays.asList("bitcoin", "ethereum", "solana");
+
+    private final PriceCache cache = new PriceCache(60000);
+    private final List<List<String>> commits = new CopyOnWriteArrayList<>();
+    private PriceStream stream;
+    private LocalTickerServer server;
+
+    /** Accepts everything and ignores it; the listener callbacks only request more. */
+    private static final WebSocket SOCKET = new WebSocket() {
+        @Override
+        public CompletableFuture<WebSocket> sendText(CharSequence data, boolean last) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendBinary(ByteBuffer data, boolean last) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPing(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPong(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendClose(int statusCode, String reason) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public String getSubprotocol() {
+            return "";
+        }
+
+        @Override
+        public boolean isOutputClosed() {
+            return false;
+        }
+
+        @Override
+        public boolean isInputClosed() {
+            return false;
+        }
+
+        @Override
+        public void abort() {
+        }
+    };
+
+    public PriceStreamTest() {
+        cache.addListener(ids -> commits.add(new ArrayList<>(ids)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static String tick(String id, double price) {
+        return String.format(Locale.ROOT, "{\"%s\":{\"usd\":%.2f,\"usd_24h_change\":1.5}}", id, price);
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private LocalTickerServer startServer(int port) throws IOException {
+        LocalTickerServer started = new LocalTickerServer(port, 5);
+        started.start();
+        return started;
+    }
+
+    @Test
+    public void testBurstBecomesOneBatch() throws InterruptedException {
+        stream = new PriceStream(URI.create("ws://127.0.0.1:1/"), cache);
+        for (int i = 1; i <= 20; i++) {
+            for (String id : COINS) {
+                stream.onText(SOCKET, tick(id, i * 10 + id.length()), true);
+            }
+        }
+        await("the flush", () -> !commits.isEmpty());
+        Thread.sleep(150);
+
+        assertEquals(1, commits.size());
+        assertEquals(3, commits.get(0).size());
+        for (String id : COINS) {
+            assertEquals(200.0 + id.length(), cache.price(id), 0.0);
+            assertEquals(1.5, cache.get(id).change24h, 0.0);
+        }
+    }
+
+    @Test
+    public void testSplitMessageIsJoined() throws InterruptedException {
+        stream = new PriceStream(URI.create("ws://127.0.0.1:1/"), cache);
+        String text = tick("bitcoin", 42);
+        stream.onText(SOCKET, text.substring(0, 7), false);
+        stream.onText(SOCKET, text.substring(7), true);
+        await("the flush", () -> !commits.isEmpty());
+        assertEquals(42.0, cache.price("bitcoin"), 0.0);
+    }
+
+    @Test
+    public void testLocalFeedIsCoalesced() throws IOException, InterruptedException {
+        server = startServer(0);
+        stream = new PriceStream(URI.create("ws://127.0.0.1:" + server.getPort() + "/"), cache);
+        stream.subscribe(COINS);
+        stream.start();
+        await("every subscribed coin", () -> cache.snapshot().keySet().containsAll(COINS));
+
+        // The feed ticks every 5 ms, so each coin moves about ten times per 50 ms flush
+        int before = commits.size();
+        long start = System.nanoTime();
+        Thread.sleep(500);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int flushes = commits.size() - before;
+        assertTrue("flushes " + flushes, flushes > 0);
+        assertTrue("flushes " + flushes + " in " + elapsedMillis + " ms", flushes <= elapsedMillis / 50 + 2);
+        for (List<String> ids : commits) {
+            assertEquals(ids.size(), new HashSet<>(ids).size());
+            assertTrue(COINS.containsAll(ids));
+        }
+    }
+
+    @Test
+    public void testReconnectAndClose() throws IOException, InterruptedException {
+        server = startServer(0);
+        int port = server.getPort();
+        stream = new PriceStream(URI.create("ws://127.0.0.1:" + port + "/"), cache);
+        stream.subscribe(Collections.singletonList("bitcoin"));
+        stream.start();
+        await("the first tick", () -> !commits.isEmpty());
+
+        server.stop();
+        Thread.sleep(100);
+        int dropped = commits.size();
+        server = startServer(port);
+        await("ticks after reconnecting", () -> commits.size() > dropped);
+
+        stream.close();
+        Thread.sleep(100);
+        int closed = commits.size();
+        Thread.sleep(200);
+        assertEquals(closed, commits.size());
+
+        // Late callbacks after close must not schedule anything or throw
+        stream.onText(SOCKET, tick("bitcoin", 1), true);
+        stream.onError(SOCKET, new IOException("late"));
+        stream.onClose(SOCKET, WebSocket.NORMAL_CLOSURE, "");
+        Thread.sleep(100);
+        assertEquals(closed, commits.size());
+    }
+}
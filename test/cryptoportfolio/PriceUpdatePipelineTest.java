@@ -0,0 +1,160 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PriceUpdatePipeline} with a clock that only moves when
+ * told to: every update within a frame reaches the table as one change per
+ * coin, and the counters add up.
+ */
+public class PriceUpdatePipelineTest {
+
+    private static final int FRAME_MILLIS = 50;
+
+    private final AssetRegistry registry = new AssetRegistry(null);
+    private final PriceCache prices = new PriceCache(60000);
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final AtomicInteger flushes = new AtomicInteger();
+    private final List<TableModelEvent> events = new ArrayList<>(); // EDT only
+    private File dir;
+    private LogHoldingStore store;
+    private HoldingsTableModel model;
+    private PriceUpdatePipeline pipeline;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("pipeline").toFile();
+        store = new LogHoldingStore(new File(dir, LogHoldingStore.FILE_NAME), registry);
+        store.load();
+        store.add(new CryptoHolding("bitcoin", 2.0));
+        store.add(new CryptoHolding("ethereum", 10.0));
+        price("bitcoin", 100);
+        price("ethereum", 10);
+        model = new HoldingsTableModel(store, prices, registry);
+        model.refresh();
+        model.addTableModelListener(events::add);
+        pipeline = new PriceUpdatePipeline(model, flushes::incrementAndGet, 1000 / FRAME_MILLIS, now::get);
+        prices.addListener(pipeline);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    private void price(String coinId, double priceUSD) {
+        PriceCache.Batch batch = prices.newBatch();
+        batch.accept(coinId, priceUSD, 0);
+        batch.commit();
+    }
+
+    /** Waits until everything queued on the EDT so far has run. */
+    private static void drain() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+
+    private void awaitFlushes(int count) throws InterruptedException, InvocationTargetException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flushes.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        drain();
+        assertEquals(count, flushes.get());
+    }
+
+    private int eventsFor(String coinId) throws InterruptedException, InvocationTargetException {
+        int[] count = new int[1];
+        SwingUtilities.invokeAndWait(() -> {
+            int row = model.rowOf(coinId);
+            for (TableModelEvent event : events) {
+                if (event.getFirstRow() == row) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    private double shownPrice(String coinId) throws InterruptedException, InvocationTargetException {
+        double[] price = new double[1];
+        SwingUtilities.invokeAndWait(() -> price[0] = model.numberAt(model.rowOf(coinId), HoldingsTableModel.COL_PRICE));
+        return price[0];
+    }
+
+    private String metrics() throws InterruptedException, InvocationTargetException {
+        String[] metrics = new String[1];
+        SwingUtilities.invokeAndWait(() -> metrics[0] = pipeline.metrics());
+        return metrics[0];
+    }
+
+    @Test
+    public void testUpdatesWithinAFrameAreCoalesced() throws Exception {
+        // The first change after a quiet spell is shown straight away
+        price("bitcoin", 101);
+        awaitFlushes(1);
+        assertEquals(2, eventsFor("bitcoin")); // Price and value cells
+        SwingUtilities.invokeAndWait(events::clear);
+
+        // The clock stands still, so everything below falls into the next frame
+        for (int i = 0; i < 50; i++) {
+            PriceCache.Batch batch = prices.newBatch();
+            batch.accept("bitcoin", 200 + i, 0);
+            batch.accept("ethereum", 10 + i + 1, 0);
+            batch.accept("dogecoin", 1 + i, 0); // Not held
+            batch.commit();
+        }
+        drain();
+        Thread.sleep(3 * FRAME_MILLIS);
+        drain();
+        assertEquals(1, flushes.get());
+        SwingUtilities.invokeAndWait(() -> assertTrue(events.isEmpty()));
+        assertEquals(101, shownPrice("bitcoin"), 0.0);
+
+        now.addAndGet(FRAME_MILLIS);
+        awaitFlushes(2);
+        assertEquals(2, eventsFor("bitcoin"));
+        assertEquals(2, eventsFor("ethereum"));
+        assertEquals(249, shownPrice("bitcoin"), 0.0);
+        assertEquals(60, shownPrice("ethereum"), 0.0);
+
+        // 1 + 150 ticks; after the first round of the frame every coin merges into its pending entry
+        assertTrue(metrics(), metrics().startsWith(
+                "price pipeline: 151 ticks, 147 merged, 1 dropped, 2 flushes (3 coins), EDT avg "));
+    }
+
+    @Test
+    public void testNothingPendingNothingFlushed() throws Exception {
+        price("bitcoin", 101);
+        awaitFlushes(1);
+        // A commit that changes nothing never reaches the pipeline
+        price("bitcoin", 101);
+        now.addAndGet(10 * FRAME_MILLIS);
+        drain();
+        Thread.sleep(3 * FRAME_MILLIS);
+        drain();
+        assertEquals(1, flushes.get());
+        assertTrue(metrics(), metrics().startsWith("price pipeline: 1 ticks, 0 merged, 0 dropped, 1 flushes (1 coins)"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ProfitAndLoss}: totals kept up to date one trade and one
+ * price change at a time, including trades that arrive out of order.
+ */
+public class ProfitAndLossTest {
+
+    private static final double DELTA = 1e-9;
+
+    private final PriceCache cache = new PriceCache(60000);
+
+    private void price(String coinId, double priceUSD) {
+        PriceCache.Batch batch = cache.newBatch();
+        batch.accept(coinId, priceUSD, 0);
+        batch.commit();
+    }
+
+    private ProfitAndLoss listening(Position.Method method) {
+        ProfitAndLoss pnl = new ProfitAndLoss(method, cache);
+        cache.addListener(pnl);
+        return pnl;
+    }
+
+    @Test
+    public void testIncremental() {
+        ProfitAndLoss pnl = listening(Position.Method.FIFO);
+        price("bitcoin", 150);
+        pnl.add(new Trade(1, Trade.Type.BUY, "bitcoin", 1, 100));
+        assertEquals(50, pnl.unrealized(), DELTA);
+        assertEquals(0, pnl.realized(), DELTA);
+
+        price("bitcoin", 200);
+        assertEquals(100, pnl.unrealized(), DELTA);
+
+        pnl.add(new Trade(2, Trade.Type.SELL, "bitcoin", 0.5, 200));
+        assertEquals(50, pnl.realized(), DELTA);
+        assertEquals(100 - 50, pnl.unrealized(), DELTA);
+
+        // A second coin adds to the portfolio totals only
+        pnl.add(new Trade(3, Trade.Type.BUY, "ethereum", 2, 10, 1, ""));
+        assertEquals(0, pnl.unrealized("ethereum"), 0.0); // No price yet
+        price("ethereum", 12);
+        assertEquals(24 - 21, pnl.unrealized("ethereum"), DELTA);
+        assertEquals(50 + 3, pnl.unrealized(), DELTA);
+        assertEquals(50, pnl.realized("bitcoin"), DELTA);
+        assertEquals(50, pnl.realized(), DELTA);
+    }
+
+    @Test
+    public void testLateTradeRebuildsItsCoin() {
+        ProfitAndLoss pnl = listening(Position.Method.FIFO);
+        price("bitcoin", 120);
+        pnl.add(new Trade(10, Trade.Type.BUY, "bitcoin", 1, 100));
+        pnl.add(new Trade(20, Trade.Type.SELL, "bitcoin", 1, 150));
+        assertEquals(50, pnl.realized(), DELTA);
+        assertEquals(0, pnl.unrealized(), DELTA);
+
+        // An older, cheaper buy is what the sale used under FIFO
+        pnl.add(new Trade(5, Trade.Type.BUY, "bitcoin", 1, 50));
+        assertEquals(100, pnl.realized(), DELTA);
+        assertEquals(20, pnl.unrealized(), DELTA);
+        List<Position.Lot> lots = pnl.lots("bitcoin");
+        assertEquals(1, lots.size());
+        assertEquals(10, lots.get(0).timestamp);
+    }
+
+    @Test
+    public void testAddAllMatchesSortedAdds() {
+        price("bitcoin", 90);
+        price("ethereum", 5);
+        List<Trade> trades = Arrays.asList(
+                new Trade(4, Trade.Type.SELL, "bitcoin", 1.5, 120, 1, ""),
+                new Trade(1, Trade.Type.BUY, "bitcoin", 1, 60),
+                new Trade(3, Trade.Type.BUY, "ethereum", 4, 3),
+                new Trade(2, Trade.Type.BUY, "bitcoin", 1, 80),
+                new Trade(5, Trade.Type.FEE, "ethereum", 1, 0));
+
+        ProfitAndLoss batch = listening(Position.Method.LIFO);
+        batch.add(trades.get(0));
+        batch.addAll(trades.subList(1, trades.size()));
+
+        ProfitAndLoss sorted = listening(Position.Method.LIFO);
+        for (int i : new int[]{1, 3, 2, 0, 4}) {
+            sorted.add(trades.get(i));
+        }
+        // LIFO: the sale takes the coin at 80 and half the coin at 60
+        assertEquals(180 - 80 - 30 - 1 - 3, sorted.realized(), DELTA);
+        assertEquals(sorted.realized(), batch.realized(), DELTA);
+        assertEquals(45 - 30 + 15 - 9, sorted.unrealized(), DELTA);
+        assertEquals(sorted.unrealized(), batch.unrealized(), DELTA);
+    }
+
+    @Test
+    public void testMethodFromSystemProperty() {
+        try {
+            System.setProperty(ProfitAndLoss.METHOD_PROPERTY, " Lifo ");
+            assertEquals(Position.Method.LIFO, ProfitAndLoss.fromSystemProperties(cache).method());
+            System.setProperty(ProfitAndLoss.METHOD_PROPERTY, "hifo");
+            assertEquals(Position.Method.FIFO, ProfitAndLoss.fromSystemProperties(cache).method());
+        } finally {
+            System.clearProperty(ProfitAndLoss.METHOD_PROPERTY);
+        }
+        assertEquals(Position.Method.FIFO, ProfitAndLoss.fromSystemProperties(cache).method());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link RefreshScheduler} driving refreshes against the local
+ * synthetic price provider: coalescing, the token bucket, backoff and stop.
+ */
+public class RefreshSchedulerTest {
+
+    private static final long HOUR = 3_600_000;
+    private static final List<String> IDS = Arrays.asList("bitcoin", "ethereum");
+
+    private final LocalPriceProvider provider = new LocalPriceProvider(null);
+    private final AtomicInteger prices = new AtomicInteger();
+    private final List<Boolean> forced = new CopyOnWriteArrayList<>();
+    private final Semaphore started = new Semaphore(0);
+    private final Semaphore refreshed = new Semaphore(0);
+    private final List<Long> retries = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile boolean failing;
+    private RefreshScheduler scheduler;
+
+    /** Fetches the two ids from the stub provider, waiting at the gate first. */
+    private int refresh(boolean force) throws Exception {
+        started.release();
+        gate.await();
+        forced.add(force);
+        if (failing) {
+            throw new IOException("HTTP 503");
+        }
+        provider.fetchPrices(IDS, (id, price, change) -> prices.incrementAndGet());
+        return 1;
+    }
+
+    private RefreshScheduler newScheduler(double requestsPerMinute, int burst) {
+        scheduler = new RefreshScheduler(this::refresh, new RefreshScheduler.Listener() {
+            @Override
+            public void refreshed() {
+                refreshed.release();
+            }
+
+            @Override
+            public void refreshFailed(Exception ex, int consecutiveFailures, long retryMillis) {
+                retries.add(retryMillis);
+                refreshed.release();
+            }
+        }, HOUR, requestsPerMinute, burst);
+        return scheduler;
+    }
+
+    private void awaitRuns(int runs) throws InterruptedException {
+        assertTrue("timed out waiting for " + runs + " runs", refreshed.tryAcquire(runs, 5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testRequestsWhileRunningAreCoalesced() throws InterruptedException {
+        gate = new CountDownLatch(1);
+        newScheduler(6000, 100).start();
+        assertTrue(started.tryAcquire(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            scheduler.requestRefresh(i == 10);
+        }
+        gate.countDown();
+        awaitRuns(2);
+        Thread.sleep(300);
+
+        // The first run, then one more for all fifty requests, forced because one of them was
+        assertEquals(Arrays.asList(false, true), forced);
+        assertEquals(2 * IDS.size(), prices.get());
+    }
+
+    @Test
+    public void testBucketLimitsBursts() throws InterruptedException {
+        // Two tokens, refilled at one per second
+        newScheduler(60, 2).start();
+        awaitRuns(1);
+        for (int i = 0; i < 3; i++) {
+            scheduler.requestRefresh(false);
+            Thread.sleep(20);
+        }
+        awaitRuns(1);
+        Thread.sleep(400);
+        assertEquals("third run should wait for a token", 2, forced.size());
+
+        awaitRuns(1);
+        assertEquals(3, forced.size());
+    }
+
+    @Test
+    public void testFailureBacksOffWithJitter() throws InterruptedException {
+        failing = true;
+        newScheduler(6000, 100).start();
+        awaitRuns(1);
+        assertEquals(1, retries.size());
+        long retry = retries.get(0);
+        assertTrue("retry " + retry, retry >= 2500 && retry <= 5000);
+
+        // An ordinary request during the backoff waits for it, as the interval would
+        failing = false;
+        scheduler.requestRefresh(false);
+        assertFalse("ran during the backoff", refreshed.tryAcquire(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, forced.size());
+
+        // A forced one runs straight away
+        scheduler.requestRefresh(true);
+        awaitRuns(1);
+        assertEquals(Arrays.asList(false, true), forced);
+        assertEquals(IDS.size(), prices.get());
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        newScheduler(6000, 100).start();
+        awaitRuns(1);
+        scheduler.stop();
+        scheduler.requestRefresh(true);
+        assertFalse(refreshed.tryAcquire(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, forced.size());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package cryptoportfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TradeCsvImport}: header and type names from different
+ * exchanges, number and date formats, duplicates within the file and
+ * against the ledger, and how bad rows and cancelling are reported.
+ */
+public class TradeCsvImportTest {
+
+    private final Set<String> stored = new HashSet<>();
+    private AssetRegistry registry;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("import").toFile();
+        File catalog = new File(dir, "assets.csv");
+        Files.write(catalog.toPath(), Arrays.asList("id,symbol,name,icon",
+                "bitcoin,BTC,Bitcoin,", "ethereum,ETH,Ethereum,"), StandardCharsets.UTF_8);
+        registry = new AssetRegistry(catalog);
+        registry.reload();
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    private TradeCsvImport.Result read(String... lines) throws IOException {
+        return read(new TradeCsvImport(registry, trade -> stored.contains(trade.key())), Arrays.asList(lines));
+    }
+
+    private TradeCsvImport.Result read(TradeCsvImport importer, List<String> lines) throws IOException {
+        File file = File.createTempFile("trades", ".csv", dir);
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return importer.read(file);
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    @Test
+    public void testHeaderAliases() throws IOException {
+        TradeCsvImport.Result result = read(
+                "\uFEFFDate,Side,Asset,Quantity,Price (USD),Fees,TxID",
+                "2024-03-05 14:30:00,Bought,BTC,0.5,\"$61,234.50\",$1.25,abc");
+        assertEquals(1, result.trades.size());
+        Trade trade = result.trades.get(0);
+        assertEquals(millis("2024-03-05T14:30:00Z"), trade.timestamp);
+        assertEquals(Trade.Type.BUY, trade.type);
+        assertEquals("bitcoin", trade.coinId);
+        assertEquals(0.5, trade.amount, 0.0);
+        assertEquals(61234.5, trade.priceUSD, 0.0);
+        assertEquals(1.25, trade.feeUSD, 0.0);
+        assertEquals("abc", trade.reference);
+
+        result = read("Created At,Transaction Type,Coin ID,Executed,Rate,Order ID",
+                "1700000000,Transfer In,ethereum,2,,");
+        assertEquals(Trade.Type.TRANSFER_IN, result.trades.get(0).type);
+        assertEquals("ethereum", result.trades.get(0).coinId);
+        assertEquals(0.0, result.trades.get(0).priceUSD, 0.0);
+    }
+
+    @Test
+    public void testTypeSynonyms() throws IOException {
+        TradeCsvImport.Result result = read("timestamp,type,coin,amount,price",
+                "1,buy,bitcoin,1,10", "2,SOLD,bitcoin,1,10", "3,Deposit,bitcoin,1,", "4,receive,bitcoin,1,",
+                "5,Withdrawal,bitcoin,1,", "6,sent,bitcoin,1,", "7,transfer-out,bitcoin,1,", "8,Fee,bitcoin,1,");
+        List<Trade.Type> types = new ArrayList<>();
+        for (Trade trade : result.trades) {
+            types.add(trade.type);
+        }
+        assertEquals(Arrays.asList(Trade.Type.BUY, Trade.Type.SELL, Trade.Type.TRANSFER_IN, Trade.Type.TRANSFER_IN,
+                Trade.Type.TRANSFER_OUT, Trade.Type.TRANSFER_OUT, Trade.Type.TRANSFER_OUT, Trade.Type.FEE), types);
+    }
+
+    @Test
+    public void testTimestamps() throws IOException {
+        TradeCsvImport.Result result = read("time,type,coin,amount",
+                "1700000000,deposit,bitcoin,1",
+                "1700000000123,deposit,bitcoin,2",
+                "1700000000.5,deposit,bitcoin,3",
+                "2024/03/05,deposit,bitcoin,4",
+                "2024-03-05T14:30:00Z,deposit,bitcoin,5",
+                "2024-03-05T14:30:00+02:00,deposit,bitcoin,6",
+                "2024-03-05T14:30:00.250,deposit,bitcoin,7");
+        assertEquals(0, result.invalid);
+        long[] expected = {
+            1700000000000L, 1700000000123L, 1700000000500L,
+            millis("2024-03-05T00:00:00Z"), millis("2024-03-05T14:30:00Z"),
+            millis("2024-03-05T12:30:00Z"), millis("2024-03-05T14:30:00.250Z")
+        };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("row " + (i + 1), expected[i], result.trades.get(i).timestamp);
+        }
+    }
+
+    @Test
+    public void testDuplicates() throws IOException {
+        stored.add(new Trade(millis("2024-01-02T00:00:00Z"), Trade.Type.BUY, "bitcoin", 1, 100, 0, "").key());
+        TradeCsvImport.Result result = read("date,type,coin,amount,price,id",
+                "2024-01-01,buy,bitcoin,1,100,t1",
+                "2024-01-01,buy,bitcoin,1,100,t1", // Same reference
+                "2024-01-02,buy,bitcoin,1,100,", // Already in the ledger
+                "2024-01-03,buy,bitcoin,1,100,",
+                "2024-01-03,buy,bitcoin,1,100,"); // Same fields
+        assertEquals(5, result.rows);
+        assertEquals(3, result.duplicates);
+        assertEquals(2, result.trades.size());
+        assertEquals("t1", result.trades.get(0).reference);
+        assertEquals(millis("2024-01-03T00:00:00Z"), result.trades.get(1).timestamp);
+    }
+
+    @Test
+    public void testInvalidRows() throws IOException {
+        TradeCsvImport.Result result = read("date,type,coin,amount,price,fee",
+                "2024-01-01,buy,dogecoin,1,1,",
+                "2024-01-01,buy,bitcoin,0,1,",
+                "2024-01-01,sell,bitcoin,1,,",
+                "2024-13-01,buy,bitcoin,1,1,",
+                "2024-01-01,stake,bitcoin,1,1,",
+                "2024-01-01,buy,bitcoin,1,1,-2",
+                "2024-01-01,buy,bitcoin,one,1,",
+                "",
+                "2024-01-01,buy,bitcoin,1,1,");
+        assertEquals(8, result.rows);
+        assertEquals(7, result.invalid);
+        assertEquals(1, result.trades.size());
+        assertEquals(7, result.errors.size());
+        assertEquals("Line 2: Unknown coin \"dogecoin\"", result.errors.get(0));
+        assertTrue(result.errors.get(2), result.errors.get(2).startsWith("Line 4: A SELL needs a price"));
+        assertTrue(result.errors.get(3), result.errors.get(3).startsWith("Line 5: "));
+        assertEquals("Line 8: Bad amount \"one\"", result.errors.get(6));
+        assertFalse(result.cancelled);
+    }
+
+    @Test
+    public void testErrorsAreCapped() throws IOException {
+        List<String> lines = new ArrayList<>(Collections.singletonList("date,type,coin,amount"));
+        for (int i = 0; i < 50; i++) {
+            lines.add("2024-01-01,buy,nothing,1");
+        }
+        TradeCsvImport.Result result = read(new TradeCsvImport(registry, trade -> false), lines);
+        assertEquals(50, result.invalid);
+        assertEquals(20, result.errors.size());
+    }
+
+    @Test
+    public void testMissingColumns() throws IOException {
+        try {
+            read("date,coin,amount", "2024-01-01,bitcoin,1");
+            fail("expected the header to be rejected");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("date, type, coin and amount"));
+        }
+    }
+
+    @Test
+    public void testCancel() throws IOException {
+        List<String> lines = new ArrayList<>(Collections.singletonList("date,type,coin,amount"));
+        for (int i = 0; i < 5000; i++) {
+            lines.add((1700000000 + i) + ",deposit,bitcoin,1");
+        }
+        TradeCsvImport importer = new TradeCsvImport(registry, trade -> false);
+        importer.cancel();
+        TradeCsvImport.Result result = read(importer, lines);
+        assertTrue(result.cancelled);
+        assertTrue("rows " + result.rows, result.rows > 0 && result.rows < 5000);
+        assertEquals(result.rows, result.trades.size());
+        assertTrue(importer.progress() < 1.0);
+
+        TradeCsvImport whole = new TradeCsvImport(registry, trade -> false);
+        assertEquals(5000, read(whole, lines).trades.size());
+        assertEquals(1.0, whole.progress(), 0.0);
+    }
+}